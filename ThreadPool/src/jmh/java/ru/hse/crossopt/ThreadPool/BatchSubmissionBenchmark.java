@@ -0,0 +1,54 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** Time to add and complete many small suppliers one by one and as a batch. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class BatchSubmissionBenchmark {
+    @Param({"100000"})
+    public int taskAmount;
+
+    @Param({"8"})
+    public int threadAmount;
+
+    private ThreadPool pool;
+    private List<Supplier<Integer>> suppliers;
+
+    @Setup
+    public void setUp() {
+        pool = new ThreadPool(threadAmount);
+        suppliers = new ArrayList<>(taskAmount);
+        for (int i = 0; i < taskAmount; i++) {
+            int value = i;
+            suppliers.add(() -> value + 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Void addOneByOne() throws LightExecutionException {
+        var tasks = new LightFuture<?>[taskAmount];
+        for (int i = 0; i < taskAmount; i++) {
+            tasks[i] = pool.add(suppliers.get(i));
+        }
+        return pool.allOf(tasks).get();
+    }
+
+    @Benchmark
+    public List<Integer> addAll() throws LightExecutionException {
+        return pool.addAll(suppliers).get();
+    }
+}
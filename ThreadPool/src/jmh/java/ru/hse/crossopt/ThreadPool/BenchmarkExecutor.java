@@ -0,0 +1,143 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** Common operations of benchmarks implemented by ThreadPool and by executors of java.util.concurrent. */
+abstract class BenchmarkExecutor {
+    /** Names of the implementations accepted by create. */
+    static final String THREAD_POOL = "ThreadPool";
+    static final String FORK_JOIN_POOL = "ForkJoinPool";
+    static final String THREAD_POOL_EXECUTOR = "ThreadPoolExecutor";
+    private static final Supplier<Integer> ZERO_TASK = () -> 0;
+    private static final Supplier<Integer> FAILING_TASK = () -> {
+        throw new IllegalStateException("Failing benchmark task.");
+    };
+
+    /** Creates an executor with the given implementation and amount of threads. */
+    @NotNull static BenchmarkExecutor create(@NotNull String implementation, int threadAmount) {
+        switch (implementation) {
+            case THREAD_POOL:
+                return new LightThreadPoolAdapter(new ThreadPool(threadAmount));
+            case FORK_JOIN_POOL:
+                return new ExecutorServiceAdapter(new ForkJoinPool(threadAmount));
+            case THREAD_POOL_EXECUTOR:
+                return new ExecutorServiceAdapter(new ThreadPoolExecutor(threadAmount, threadAmount,
+                        0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()));
+            default:
+                throw new IllegalArgumentException("Unknown implementation " + implementation + ".");
+        }
+    }
+
+    /** Executes the supplier in the executor and waits for its result. */
+    abstract Object submitAndWait(@NotNull Supplier<?> supplier) throws Exception;
+
+    /** Executes the given amount of copies of the supplier in the executor and waits for all of them. */
+    abstract void submitAllAndWait(@NotNull Supplier<?> supplier, int amount) throws Exception;
+
+    /**
+     * Executes a chain of the given amount of increments, each depending on the previous one, and waits for it.
+     * @param failing whether the first task of the chain fails, so the failure is passed along the chain.
+     * @return the result of the chain or -1 if it failed.
+     */
+    abstract int chainAndWait(int length, boolean failing) throws Exception;
+
+    /** Shuts the executor down and waits for its threads. */
+    abstract void shutdown() throws InterruptedException;
+
+    /** Executor backed by ThreadPool. */
+    private static class LightThreadPoolAdapter extends BenchmarkExecutor {
+        private final @NotNull ThreadPool pool;
+
+        private LightThreadPoolAdapter(@NotNull ThreadPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        Object submitAndWait(@NotNull Supplier<?> supplier) throws LightExecutionException {
+            return pool.add(supplier).get();
+        }
+
+        @Override
+        void submitAllAndWait(@NotNull Supplier<?> supplier, int amount) throws LightExecutionException {
+            var tasks = new LightFuture<?>[amount];
+            for (int i = 0; i < amount; i++) {
+                tasks[i] = pool.add(supplier);
+            }
+            pool.allOf(tasks).get();
+        }
+
+        @Override
+        int chainAndWait(int length, boolean failing) {
+            LightFuture<Integer> task = pool.add(failing ? FAILING_TASK : ZERO_TASK);
+            for (int i = 0; i < length; i++) {
+                task = task.thenApply(x -> x + 1);
+            }
+            try {
+                return task.get();
+            } catch (LightExecutionException exception) {
+                return -1;
+            }
+        }
+
+        @Override
+        void shutdown() throws InterruptedException {
+            pool.shutdown();
+        }
+    }
+
+    /** Executor backed by an ExecutorService, chains are built of CompletableFuture stages running in it. */
+    private static class ExecutorServiceAdapter extends BenchmarkExecutor {
+        private final @NotNull ExecutorService executor;
+
+        private ExecutorServiceAdapter(@NotNull ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        Object submitAndWait(@NotNull Supplier<?> supplier) throws ExecutionException, InterruptedException {
+            return executor.submit(supplier::get).get();
+        }
+
+        @Override
+        void submitAllAndWait(@NotNull Supplier<?> supplier, int amount)
+                throws ExecutionException, InterruptedException {
+            var tasks = new Future<?>[amount];
+            for (int i = 0; i < amount; i++) {
+                tasks[i] = executor.submit(supplier::get);
+            }
+            for (var task : tasks) {
+                task.get();
+            }
+        }
+
+        @Override
+        int chainAndWait(int length, boolean failing) throws InterruptedException {
+            CompletableFuture<Integer> task =
+                    CompletableFuture.supplyAsync(failing ? FAILING_TASK : ZERO_TASK, executor);
+            for (int i = 0; i < length; i++) {
+                task = task.thenApplyAsync(x -> x + 1, executor);
+            }
+            try {
+                return task.get();
+            } catch (ExecutionException exception) {
+                return -1;
+            }
+        }
+
+        @Override
+        void shutdown() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Time to complete many concurrently added suppliers that block, on fixed and virtual thread pools. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BlockingSuppliersBenchmark {
+    private static final long BLOCKING_MILLIS = 1;
+
+    @Param({"fixed", "virtual"})
+    public String implementation;
+
+    @Param({"10000"})
+    public int taskAmount;
+
+    @Param({"8"})
+    public int threadAmount;
+
+    private ThreadPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = implementation.equals("virtual") ? ThreadPool.newVirtualThreadPool() : new ThreadPool(threadAmount);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Void blockingSuppliers() throws LightExecutionException {
+        var tasks = new LightFuture<?>[taskAmount];
+        for (int i = 0; i < taskAmount; i++) {
+            tasks[i] = pool.add(() -> {
+                try {
+                    Thread.sleep(BLOCKING_MILLIS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        }
+        return pool.allOf(tasks).get();
+    }
+}
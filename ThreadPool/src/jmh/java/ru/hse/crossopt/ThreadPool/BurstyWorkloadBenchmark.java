@@ -0,0 +1,88 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bursts of short blocking tasks separated by pauses, on fixed and elastic thread pools.
+ * The 99th percentile of queue wait time and the peak amount of threads are reported next to the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) // JMH reports auxiliary counters only in throughput and average time modes
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class BurstyWorkloadBenchmark {
+    private static final long BLOCKING_MILLIS = 1;
+    private static final long PAUSE_MILLIS = 50;
+
+    @Param({"fixed", "elastic"})
+    public String implementation;
+
+    @Param({"2000"})
+    public int burstSize;
+
+    @Param({"4"})
+    public int coreThreadAmount;
+
+    @Param({"64"})
+    public int maxThreadAmount;
+
+    private ThreadPool pool;
+    private int measuredIterationAmount;
+
+    /**
+     * Statistics of the pool since the start of the trial, taken after each burst. JMH sums the counters
+     * of all measurement iterations and forks, so they are divided by the amount of these iterations
+     * and the reported values are the means over them.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PoolCounters {
+        public double queueWait99thPercentileMillis;
+        public double peakThreadAmount;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        pool = implementation.equals("elastic")
+                ? new ThreadPool(coreThreadAmount, maxThreadAmount, 20, 1, TimeUnit.MILLISECONDS)
+                : new ThreadPool(coreThreadAmount);
+        pool.getStatistics().setEnabled(true);
+        measuredIterationAmount = params.getMeasurement().getCount() * Math.max(params.getForks(), 1);
+    }
+
+    @Setup(Level.Invocation) // bursts take milliseconds, so the timing of each invocation is precise enough
+    public void pause() throws InterruptedException {
+        Thread.sleep(PAUSE_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Void burst(PoolCounters counters) throws LightExecutionException {
+        var tasks = new LightFuture<?>[burstSize];
+        for (int i = 0; i < burstSize; i++) {
+            tasks[i] = pool.add(() -> {
+                try {
+                    Thread.sleep(BLOCKING_MILLIS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        }
+        Void result = pool.allOf(tasks).get();
+        ThreadPoolStatistics statistics = pool.getStatistics();
+        counters.queueWait99thPercentileMillis =
+                statistics.getQueueWait99thPercentileNanos() / 1e6 / measuredIterationAmount;
+        // the pool keeps the peak, so threads added and retired during the burst count too
+        counters.peakThreadAmount = (double) pool.getPeakThreadAmount() / measuredIterationAmount;
+        return result;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of chains of dependent continuations of different depth: thenApply of ThreadPool
+ * compared with thenApplyAsync of CompletableFuture on ForkJoinPool and ThreadPoolExecutor.
+ * Chains that fail at their first task show the cost of passing the failure along.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChainDepthBenchmark {
+    @Param({BenchmarkExecutor.THREAD_POOL, BenchmarkExecutor.FORK_JOIN_POOL, BenchmarkExecutor.THREAD_POOL_EXECUTOR})
+    public String implementation;
+
+    @Param({"4"})
+    public int threadAmount;
+
+    @Param({"1", "16", "256"})
+    public int chainLength;
+
+    @Param({"false", "true"})
+    public boolean failing;
+
+    private BenchmarkExecutor executor;
+
+    @Setup
+    public void setUp() {
+        executor = BenchmarkExecutor.create(implementation, threadAmount);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int chain() throws Exception {
+        return executor.chainAndWait(chainLength, failing);
+    }
+}
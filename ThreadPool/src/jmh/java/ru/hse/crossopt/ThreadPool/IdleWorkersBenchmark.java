@@ -0,0 +1,79 @@
+package ru.hse.crossopt.ThreadPool;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the blocking ThreadPool with the former spinning design:
+ * CPU time burnt by an idle pool and latency between submission of a task and its start.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IdleWorkersBenchmark {
+    private static final long IDLE_MILLIS = 100;
+    private static final OperatingSystemMXBean OS_BEAN =
+            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    @Param({"blocking", "spinning"})
+    public String implementation;
+
+    @Param({"1", "4", "32"})
+    public int threadAmount;
+
+    private ThreadPool pool;
+    private SpinningThreadPool spinningPool;
+    private volatile boolean started;
+
+    /** Process CPU time spent during the idle benchmark, reported next to the score. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CpuCounters {
+        public long cpuMillis;
+    }
+
+    @Setup
+    public void setUp() {
+        if (implementation.equals("blocking")) {
+            pool = new ThreadPool(threadAmount);
+        } else {
+            spinningPool = new SpinningThreadPool(threadAmount);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (pool != null) {
+            pool.shutdown();
+        } else {
+            spinningPool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void idle(CpuCounters counters) throws InterruptedException {
+        long cpuBefore = OS_BEAN.getProcessCpuTime();
+        Thread.sleep(IDLE_MILLIS);
+        counters.cpuMillis += TimeUnit.NANOSECONDS.toMillis(OS_BEAN.getProcessCpuTime() - cpuBefore);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void submitToStart() {
+        started = false;
+        if (pool != null) {
+            pool.add(() -> started = true);
+        } else {
+            spinningPool.add(() -> started = true);
+        }
+        while (!started) {
+            Thread.onSpinWait();
+        }
+    }
+}
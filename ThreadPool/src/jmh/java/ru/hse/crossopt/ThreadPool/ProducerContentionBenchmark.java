@@ -0,0 +1,64 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Throughput of submitting empty tasks from several producer threads at once into one pool,
+ * for ThreadPool compared with ForkJoinPool and ThreadPoolExecutor.
+ * Every producer submits a batch of tasks and waits for it, so the shared queue is always contended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ProducerContentionBenchmark.BATCH_SIZE)
+public class ProducerContentionBenchmark {
+    static final int BATCH_SIZE = 100;
+    private static final Supplier<Object> EMPTY_TASK = () -> null;
+
+    @Param({BenchmarkExecutor.THREAD_POOL, BenchmarkExecutor.FORK_JOIN_POOL, BenchmarkExecutor.THREAD_POOL_EXECUTOR})
+    public String implementation;
+
+    @Param({"4"})
+    public int threadAmount;
+
+    private BenchmarkExecutor executor;
+
+    @Setup
+    public void setUp() {
+        executor = BenchmarkExecutor.create(implementation, threadAmount);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneProducer() throws Exception {
+        executor.submitAllAndWait(EMPTY_TASK, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoProducers() throws Exception {
+        executor.submitAllAndWait(EMPTY_TASK, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourProducers() throws Exception {
+        executor.submitAllAndWait(EMPTY_TASK, BATCH_SIZE);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void eightProducers() throws Exception {
+        executor.submitAllAndWait(EMPTY_TASK, BATCH_SIZE);
+    }
+}
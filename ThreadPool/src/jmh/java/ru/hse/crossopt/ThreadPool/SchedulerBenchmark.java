@@ -0,0 +1,51 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Scheduler costs of ThreadPool compared with ForkJoinPool and ThreadPoolExecutor:
+ * throughput of submitting many empty tasks and round-trip latency of a single empty task.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SchedulerBenchmark {
+    private static final Supplier<Object> EMPTY_TASK = () -> null;
+
+    @Param({BenchmarkExecutor.THREAD_POOL, BenchmarkExecutor.FORK_JOIN_POOL, BenchmarkExecutor.THREAD_POOL_EXECUTOR})
+    public String implementation;
+
+    @Param({"4"})
+    public int threadAmount;
+
+    private BenchmarkExecutor executor;
+
+    @Setup
+    public void setUp() {
+        executor = BenchmarkExecutor.create(implementation, threadAmount);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    /** Empty tasks submitted in batches of 1000, the score is multiplied by 1000 to get tasks per second. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(1000)
+    public void submitThroughput() throws Exception {
+        executor.submitAllAndWait(EMPTY_TASK, 1000);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object roundTrip() throws Exception {
+        return executor.submitAndWait(EMPTY_TASK);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Baseline for benchmarks: the former ThreadPool worker design,
+ * where workers spin on a synchronized LinkedList instead of parking.
+ */
+class SpinningThreadPool {
+    private final @NotNull Thread[] threads;
+    private final @NotNull LinkedList<Runnable> taskQueue = new LinkedList<>();
+    private volatile boolean wasShutdown = false;
+
+    /** Creates a pool with the given number of spinning threads. */
+    SpinningThreadPool(int threadAmount) {
+        threads = new Thread[threadAmount];
+        for (int i = 0; i < threadAmount; i++) {
+            threads[i] = new Thread(() -> {
+                while (!wasShutdown) {
+                    Runnable currentTask = null;
+                    if (!taskQueue.isEmpty()) {
+                        synchronized (taskQueue) {
+                            if (!taskQueue.isEmpty()) {
+                                currentTask = taskQueue.removeFirst();
+                            }
+                        }
+                    }
+                    if (currentTask != null) {
+                        currentTask.run();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+    }
+
+    /** Adds the task to the pool queue. */
+    void add(@NotNull Runnable task) {
+        synchronized (taskQueue) {
+            taskQueue.add(task);
+        }
+    }
+
+    /** Stops and joins all threads of the pool. */
+    void shutdown() throws InterruptedException {
+        wasShutdown = true;
+        Arrays.stream(threads).forEach(Thread::interrupt);
+        for (var thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Latency of long thenApply chains with continuations submitted to the pool or run inline. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ThenApplyChainBenchmark {
+    @Param({"pooled", "inline"})
+    public String continuations;
+
+    @Param({"100", "1000"})
+    public int chainLength;
+
+    @Param({"1", "4"})
+    public int threadAmount;
+
+    private ThreadPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = new ThreadPool(threadAmount);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Integer chain() throws LightExecutionException {
+        boolean inline = continuations.equals("inline");
+        LightFuture<Integer> task = pool.add(() -> 0);
+        for (int i = 0; i < chainLength; i++) {
+            task = inline ? task.thenApplyInline(x -> x + 1) : task.thenApply(x -> x + 1);
+        }
+        return task.get();
+    }
+}
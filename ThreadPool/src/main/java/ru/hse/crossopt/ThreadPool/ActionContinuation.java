@@ -0,0 +1,18 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Continuation that runs the given action right in the thread that completed the task. */
+class ActionContinuation extends Continuation {
+    private final @NotNull Runnable action;
+
+    ActionContinuation(@NotNull Runnable action) {
+        this.action = action;
+    }
+
+    @Override
+    void fire(@Nullable Exception failure) {
+        action.run();
+    }
+}
@@ -0,0 +1,157 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Future of a batch of suppliers that are executed by runner tasks taking them in chunks.
+ * @param <T> the type of results of the suppliers.
+ */
+class BatchTask<T> extends ThreadPoolTask<List<T>> implements LightBatchFuture<T> {
+    /** Marker of a supplier that has finished before the future of its task was requested. */
+    private static final @NotNull Object ITEM_DONE = new Object();
+
+    private final @NotNull Supplier<?>[] suppliers;
+    private final @NotNull Object[] results;
+    private final @NotNull AtomicReferenceArray<Object> itemFutures;
+    private final @NotNull AtomicInteger nextIndex = new AtomicInteger();
+    private final @NotNull AtomicInteger pendingAmount;
+    private volatile boolean hasFailures = false;
+    int chunkSize = 1;
+
+    /** Creates a batch of the given suppliers, it is completed when all of them are executed. */
+    BatchTask(@NotNull ThreadPool pool, @NotNull Supplier<?>[] suppliers) {
+        super(pool, null);
+        this.suppliers = suppliers;
+        results = new Object[suppliers.length];
+        itemFutures = new AtomicReferenceArray<>(suppliers.length);
+        pendingAmount = new AtomicInteger(suppliers.length);
+    }
+
+    /** Returns the amount of tasks in the batch. */
+    @Override
+    public int size() {
+        return suppliers.length;
+    }
+
+    /**
+     * Returns the future of a single task of the batch, it is created on the first request.
+     * @param index the index of the task in the batch.
+     * @return the future with the result of the task.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    @NotNull public LightFuture<T> getItem(int index) {
+        if (index < 0 || index >= suppliers.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of batch of size " + size() + ".");
+        }
+        while (true) {
+            Object current = itemFutures.get(index);
+            if (current != null && current != ITEM_DONE) {
+                return (LightFuture<T>) current;
+            }
+            var item = new ThreadPoolTask<T>(pool, null);
+            if (current == ITEM_DONE) {
+                completeItem(item, results[index]);
+            }
+            if (itemFutures.compareAndSet(index, current, item)) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Cancels the suppliers of the batch that have not started yet, then the batch fails
+     * and their futures throw LightExecutionException caused by CancellationException.
+     * @return true if some suppliers were cancelled or false if all of them have already started.
+     */
+    @Override
+    public boolean cancel() {
+        return failUnclaimedItems(new CancellationException("Task was cancelled."));
+    }
+
+    /** Executes chunks of suppliers until all of them are taken, is the action of the runner tasks. */
+    @Nullable Void runChunks() {
+        int start;
+        while ((start = nextIndex.getAndAdd(chunkSize)) < suppliers.length) {
+            int end = Math.min(start + chunkSize, suppliers.length);
+            for (int i = start; i < end; i++) {
+                Object outcome;
+                try {
+                    outcome = suppliers[i].get();
+                } catch (Exception exception) {
+                    outcome = new ItemFailure(exception);
+                }
+                finishItem(i, outcome);
+            }
+            onItemsFinished(end - start);
+        }
+        return null;
+    }
+
+    /**
+     * Fails all suppliers of the batch that were not taken by runners yet with the given exception.
+     * @return true if there were such suppliers.
+     */
+    boolean failUnclaimedItems(@NotNull Exception exception) {
+        int start = Math.min(nextIndex.getAndSet(suppliers.length), suppliers.length);
+        if (start == suppliers.length) {
+            return false;
+        }
+        var failure = new ItemFailure(exception);
+        for (int i = start; i < suppliers.length; i++) {
+            finishItem(i, failure);
+        }
+        onItemsFinished(suppliers.length - start);
+        return true;
+    }
+
+    /** Stores the result or the failure of the supplier and completes its future if it was requested. */
+    @SuppressWarnings("unchecked")
+    private void finishItem(int index, @Nullable Object outcome) {
+        results[index] = outcome;
+        if (outcome instanceof ItemFailure) {
+            hasFailures = true;
+        }
+        Object item = itemFutures.getAndSet(index, ITEM_DONE);
+        if (item != null) {
+            completeItem((ThreadPoolTask<T>) item, outcome);
+        }
+    }
+
+    /** Completes the future of a single task with the stored outcome of its supplier. */
+    @SuppressWarnings("unchecked")
+    private void completeItem(@NotNull ThreadPoolTask<T> item, @Nullable Object outcome) {
+        if (outcome instanceof ItemFailure) {
+            item.complete(null, ((ItemFailure) outcome).exception);
+        } else {
+            item.complete((T) outcome, null);
+        }
+    }
+
+    /** Completes the batch once the last of its suppliers is finished. */
+    @SuppressWarnings("unchecked")
+    void onItemsFinished(int amount) {
+        if (pendingAmount.addAndGet(-amount) != 0) {
+            return;
+        }
+        if (hasFailures) {
+            for (var outcome : results) {
+                if (outcome instanceof ItemFailure) {
+                    super.complete(null, ((ItemFailure) outcome).exception);
+                    return;
+                }
+            }
+        }
+        super.complete(Collections.unmodifiableList(Arrays.asList((T[]) results)), null);
+    }
+}
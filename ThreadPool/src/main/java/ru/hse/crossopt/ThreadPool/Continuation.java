@@ -0,0 +1,14 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.Nullable;
+
+/** Node of the lock-free stack of actions that are run after some task is executed. */
+abstract class Continuation {
+    @Nullable Continuation next;
+
+    /**
+     * Runs the action, called once by the thread that executed the task.
+     * @param failure the exception the task failed with, or null if it succeeded.
+     */
+    abstract void fire(@Nullable Exception failure);
+}
@@ -0,0 +1,16 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Task in the queue ordered by deadlines. */
+class DeadlineEntry {
+    final @NotNull ThreadPoolTask<?> task;
+    final long deadline;
+    final long number;
+
+    DeadlineEntry(@NotNull ThreadPoolTask<?> task, long deadline, long number) {
+        this.task = task;
+        this.deadline = deadline;
+        this.number = number;
+    }
+}
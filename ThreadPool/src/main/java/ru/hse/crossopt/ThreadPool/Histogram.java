@@ -0,0 +1,83 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative values with buckets of power of two width.
+ * Percentiles are approximate: the upper bound of the bucket containing the percentile is returned.
+ */
+public class Histogram {
+    /** Bucket i holds values below 2^i and not below 2^(i - 1), non-negative values need no more than 64 buckets. */
+    private static final int BUCKET_AMOUNT = Long.SIZE;
+
+    private final @NotNull LongAdder[] buckets = new LongAdder[BUCKET_AMOUNT];
+    private final @NotNull LongAdder sum = new LongAdder();
+    private final @NotNull LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** Creates an empty histogram. */
+    Histogram() {
+        for (int i = 0; i < BUCKET_AMOUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /** Adds the value to the histogram, negative values are counted as zero. */
+    void record(long value) {
+        value = Math.max(value, 0);
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** Returns the amount of recorded values. */
+    public long getCount() {
+        long count = 0;
+        for (var bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /** Returns the mean of recorded values or zero if there are none. */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /** Returns the maximal recorded value or zero if there are none. */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of recorded values: the upper bound 2^i - 1 of the bucket
+     * holding the percentile, or the maximal value if it is smaller. So for an exact percentile p the result
+     * is not below p and, unless p is zero, below 2 * p.
+     * @param percentile the percentile, from 0 to 100.
+     * @return the upper bound of the percentile or zero if there are no values.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile should be between 0 and 100.");
+        }
+        long[] counts = new long[BUCKET_AMOUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_AMOUNT; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_AMOUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min((1L << i) - 1, getMax());
+            }
+        }
+        return 0;
+    }
+}
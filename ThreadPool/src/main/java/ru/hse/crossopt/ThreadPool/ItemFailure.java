@@ -0,0 +1,12 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Exception of a supplier of a batch stored among the results of the other suppliers. */
+class ItemFailure {
+    final @NotNull Exception exception;
+
+    ItemFailure(@NotNull Exception exception) {
+        this.exception = exception;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Queue of tasks added with keys, they are executed one by one in the order of addition. */
+class KeyLane {
+    final @NotNull Queue<ThreadPoolTask<?>> tasks = new ConcurrentLinkedQueue<>();
+    /** The only worker executing the tasks, or null in the pool without fixed threads. */
+    final @Nullable Worker owner;
+    /** Whether a thread of the pool without fixed threads executes the tasks. */
+    final @NotNull AtomicBoolean isRunning = new AtomicBoolean();
+
+    /** Creates an empty lane of the given worker. */
+    KeyLane(@Nullable Worker owner) {
+        this.owner = owner;
+    }
+}
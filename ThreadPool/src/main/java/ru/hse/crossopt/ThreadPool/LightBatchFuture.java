@@ -0,0 +1,22 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Future of a batch of tasks added to a ThreadPool at once. It is ready when all the tasks are,
+ * its result is the list of their results in the order of the tasks.
+ */
+public interface LightBatchFuture<T> extends LightFuture<List<T>> {
+    /** Returns the amount of tasks in the batch. */
+    int size();
+
+    /**
+     * Returns the future of a single task of the batch, it is created on the first request.
+     * @param index the index of the task in the batch.
+     * @return the future with the result of the task.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @NotNull LightFuture<T> getItem(int index);
+}
@@ -3,9 +3,18 @@ package ru.hse.crossopt.ThreadPool;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
-/** Interface that stores the tasks that will be executed in a ThreadPool. */
+/**
+ * Interface that stores the tasks that will be executed in a ThreadPool.
+ * Methods that can be expressed through the others have default implementations. Timed get, thenCompose,
+ * exceptionally and whenComplete cannot, so the implementations written against the first version
+ * of this interface, which had only isReady, get and thenApply, have to implement them.
+ */
 public interface LightFuture<T> {
     /** Returns true if task has been executed or false otherwise. */
     boolean isReady();
@@ -17,6 +26,26 @@ public interface LightFuture<T> {
      */
     @Nullable T get() throws LightExecutionException;
 
+    /**
+     * Returns result of the execution of the task, waiting for it for at most the given time.
+     * @param timeout the maximal time to wait.
+     * @param unit the unit of the timeout.
+     * @return result of the execution of the task.
+     * @throws LightExecutionException if exception occurred in supplier's calculation.
+     * @throws TimeoutException if the task is not ready after the timeout.
+     */
+    @Nullable T get(long timeout, @NotNull TimeUnit unit) throws LightExecutionException, TimeoutException;
+
+    /**
+     * Cancels the task if it has not started yet, then get throws LightExecutionException
+     * caused by CancellationException.
+     * By default the task cannot be cancelled.
+     * @return true if the task was cancelled or false if it has already started or completed.
+     */
+    default boolean cancel() {
+        return false;
+    }
+
     /**
      * Applies the given function to the result of the task.
      * @param function a function to apply to the result of this task.
@@ -24,4 +53,53 @@ public interface LightFuture<T> {
      * @return a new LightFuture task.
      */
     @NotNull <R> LightFuture<R> thenApply(@NotNull Function<? super T, R> function);
+
+    /**
+     * Applies the given function to the result of the task right in the thread that completes the task,
+     * without submitting it to the pool. Intended for cheap functions.
+     * By default the function is applied as by thenApply.
+     * @param function a function to apply to the result of this task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task.
+     */
+    @NotNull default <R> LightFuture<R> thenApplyInline(@NotNull Function<? super T, R> function) {
+        return thenApply(function);
+    }
+
+    /**
+     * Applies the given function to the result of the task and waits for the task it returns.
+     * The function is applied in the pool, no thread is blocked while waiting.
+     * @param function a function that returns a new task for the result of this task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task completed with the outcome of the task returned by the function.
+     */
+    @NotNull <R> LightFuture<R> thenCompose(@NotNull Function<? super T, ? extends LightFuture<R>> function);
+
+    /**
+     * Applies the given function to the results of this and the other task once both are ready.
+     * @param other the other task.
+     * @param function a function to apply to the results of the tasks.
+     * @param <U> the type of the other task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task, failed if any of the two tasks failed.
+     */
+    @NotNull default <U, R> LightFuture<R> thenCombine(@NotNull LightFuture<? extends U> other,
+            @NotNull BiFunction<? super T, ? super U, ? extends R> function) {
+        return thenCompose(value -> other.thenApply(otherValue -> function.apply(value, otherValue)));
+    }
+
+    /**
+     * Replaces the exception that occurred in the task with the result of the given function.
+     * @param function a function to apply to the exception of this task.
+     * @return a new LightFuture task with the result of this task or the function.
+     */
+    @NotNull LightFuture<T> exceptionally(@NotNull Function<? super Exception, ? extends T> function);
+
+    /**
+     * Runs the given action with the result or the exception of the task once it is ready.
+     * @param action an action to run, one of its arguments is null.
+     * @return a new LightFuture task with the outcome of this task,
+     * or with the exception of the action if only the action failed.
+     */
+    @NotNull LightFuture<T> whenComplete(@NotNull BiConsumer<? super T, ? super Exception> action);
 }
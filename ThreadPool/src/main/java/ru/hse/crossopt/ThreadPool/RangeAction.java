@@ -0,0 +1,12 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Action applied to consecutive parts of a range by parallelFor and parallelReduce.
+ * @param <T> the type of the accumulated value.
+ */
+interface RangeAction<T> {
+    /** Returns the accumulator combined with the values of indices from start inclusive to end exclusive. */
+    @Nullable T apply(@Nullable T accumulator, int start, int end);
+}
@@ -0,0 +1,114 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Part of a range processed by one task. Parts split off from it are its children, it is completed
+ * when its own indices are processed and all children are completed, the last of them combines the values.
+ * @param <T> the type of the accumulated value.
+ */
+class RangeNode<T> {
+    private final @NotNull ThreadPool pool;
+    private final @Nullable RangeNode<T> parent;
+    private final int from;
+    private final int to;
+    private final @Nullable T identity;
+    private final @NotNull RangeAction<T> action;
+    private final @NotNull BinaryOperator<T> combiner;
+    private final int grain;
+    private final @NotNull ThreadPoolTask<T> result;
+    private final @NotNull List<RangeNode<T>> children = new ArrayList<>();
+    private final @NotNull AtomicInteger pendingAmount = new AtomicInteger(1);
+    private @Nullable T value = null;
+    private @Nullable Exception exception = null;
+
+    RangeNode(@NotNull ThreadPool pool, @Nullable RangeNode<T> parent, int from, int to, @Nullable T identity,
+              @NotNull RangeAction<T> action, @NotNull BinaryOperator<T> combiner, int grain,
+              @NotNull ThreadPoolTask<T> result) {
+        this.pool = pool;
+        this.parent = parent;
+        this.from = from;
+        this.to = to;
+        this.identity = identity;
+        this.action = action;
+        this.combiner = combiner;
+        this.grain = grain;
+        this.result = result;
+    }
+
+    /** Creates a task that processes this part, the part fails if the task is dropped or cancelled. */
+    @NotNull ThreadPoolTask<Void> toTask() {
+        var task = new ThreadPoolTask<Void>(pool, () -> {
+            process();
+            return null;
+        });
+        task.whenReady(() -> {
+            if (task.failure() != null) {
+                exception = task.failure();
+                result.complete(null, exception);
+                arrive();
+            }
+        });
+        return task;
+    }
+
+    /** Applies the action to the part chunk by chunk, splitting off right halves while other threads lack work. */
+    private void process() {
+        int start = from;
+        int end = to;
+        T accumulator = identity;
+        try {
+            while (start < end && !result.isReady()) {
+                while (end - start > grain && pool.needsMoreTasks()) {
+                    int middle = start + (end - start) / 2;
+                    var child = new RangeNode<>(pool, this, middle, end, identity, action, combiner, grain, result);
+                    children.add(child);
+                    pendingAmount.incrementAndGet();
+                    pool.enqueue(child.toTask(), false);
+                    end = middle;
+                }
+                int chunkEnd = end - start > grain ? start + grain : end;
+                accumulator = action.apply(accumulator, start, chunkEnd);
+                start = chunkEnd;
+            }
+            value = accumulator;
+        } catch (Exception actionException) {
+            exception = actionException;
+            result.complete(null, actionException); // other parts stop at once
+        }
+        arrive();
+    }
+
+    /**
+     * Marks this part or one of its children as completed. The last one combines the value of this part
+     * with the values of the children, which lie to the right of it in reverse order of splitting.
+     */
+    private void arrive() {
+        if (pendingAmount.decrementAndGet() != 0) {
+            return;
+        }
+        for (int i = children.size() - 1; i >= 0 && exception == null; i--) {
+            RangeNode<T> child = children.get(i);
+            if (child.exception != null) {
+                exception = child.exception;
+            } else {
+                try {
+                    value = combiner.apply(value, child.value);
+                } catch (Exception combinerException) {
+                    exception = combinerException;
+                }
+            }
+        }
+        if (parent != null) {
+            parent.arrive();
+        } else {
+            result.complete(value, exception);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.hse.crossopt.ThreadPool;
+
+/** What a ThreadPool with bounded capacity does with a new task when its queue is full. */
+public enum RejectionPolicy {
+    /** The thread that adds the task waits until there is free space in the queue. */
+    BLOCK,
+    /** The task is executed right in the thread that adds it. */
+    CALLER_RUNS,
+    /**
+     * The oldest queued task of the lowest priority is failed with RejectedExecutionException to make space
+     * for the new one. Background tasks are dropped first, then tasks of normal priority, then tasks with deadlines
+     * in the order they were added, then tasks of high priority. Tasks submitted by the pool itself, such as
+     * continuations, are never dropped: if only they are queued, the thread that adds the task waits as with BLOCK.
+     */
+    DROP_OLDEST,
+    /** RejectedExecutionException is thrown to the thread that adds the task. */
+    THROW
+}
@@ -0,0 +1,12 @@
+package ru.hse.crossopt.ThreadPool;
+
+/** Strategy of distributing tasks between the threads of a ThreadPool. */
+public enum SchedulingMode {
+    /** All tasks are put into one queue shared by all threads. */
+    SHARED_QUEUE,
+    /**
+     * Every thread owns a deque. Tasks submitted from inside a pool thread go to its own deque,
+     * threads that ran out of work steal tasks from the deques of other threads.
+     */
+    WORK_STEALING
+}
@@ -0,0 +1,14 @@
+package ru.hse.crossopt.ThreadPool;
+
+/**
+ * Priority of a task added to a ThreadPool. Threads take queued tasks of higher priority first,
+ * but regularly take tasks of lower priorities first too, so that they are not starved.
+ */
+public enum TaskPriority {
+    /** Latency-sensitive tasks that are taken before all other queued tasks. */
+    HIGH,
+    /** Usual tasks. */
+    NORMAL,
+    /** Tasks that may wait while there are tasks of higher priorities. */
+    BACKGROUND
+}
@@ -5,58 +5,367 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
-/** Thread pool class with fixed number of threads. */
+/** Thread pool class with fixed number of threads, or with a number varying between bounds in elastic mode. */
 public class ThreadPool {
-    private final @NotNull Thread[] threads;
-    private final @NotNull LinkedList<ThreadPoolTask<?>> taskQueue;
-    private volatile boolean wasShutdown = false;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int RANGE_CHUNKS_PER_THREAD = 16;
+    private static final @NotNull TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    volatile @NotNull Worker[] threads;
+    private final int coreThreadAmount;
+    private final int maxThreadAmount;
+    final long keepAliveNanos;
+    private final long growthLatencyNanos;
+    private final @NotNull ReentrantLock threadsLock = new ReentrantLock();
+    /** Thread of an elastic pool that adds workers when queued tasks wait for too long, started when first needed. */
+    private volatile @Nullable Thread growthMonitor;
+    private final @NotNull AtomicBoolean isGrowthCheckRequested = new AtomicBoolean();
+    final @NotNull AtomicInteger startingWorkerAmount = new AtomicInteger();
+    final @NotNull SchedulingMode schedulingMode;
+    private final @NotNull Queue<ThreadPoolTask<?>> highPriorityQueue = new ConcurrentLinkedQueue<>();
+    private final @NotNull Queue<ThreadPoolTask<?>> taskQueue = new ConcurrentLinkedQueue<>();
+    private final @NotNull Queue<ThreadPoolTask<?>> backgroundQueue = new ConcurrentLinkedQueue<>();
+    final @NotNull ConcurrentSkipListSet<DeadlineEntry> deadlineQueue = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((DeadlineEntry entry) -> entry.deadline).thenComparingLong(entry -> entry.number));
+    private final @NotNull AtomicLong deadlineEntryNumber = new AtomicLong();
+    final @NotNull TimerHeap timers = new TimerHeap();
+    /** The worker that waits until the earliest timer is due, or null if there is none. */
+    final @NotNull AtomicReference<Worker> timerWaiter = new AtomicReference<>();
+    private final @NotNull KeyLane[] keyLanes;
+    final @NotNull Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final int capacity;
+    private final @NotNull RejectionPolicy rejectionPolicy;
+    private final @NotNull AtomicInteger queuedTaskAmount = new AtomicInteger();
+    private final @NotNull AtomicLong rejectedTaskAmount = new AtomicLong();
+    private final @NotNull ReentrantLock queueLock = new ReentrantLock();
+    private final @NotNull Condition queueNotFull = queueLock.newCondition();
+    private final @NotNull AtomicInteger blockedProducerAmount = new AtomicInteger();
+    private final @Nullable ThreadFactory taskThreadFactory;
+    private final @NotNull Set<Thread> taskThreads = ConcurrentHashMap.newKeySet();
+    private final @NotNull AtomicInteger peakThreadAmount = new AtomicInteger();
+    /** Threads of the pool without fixed threads that wait for timers, by the tasks returned to the user. */
+    private final @NotNull Map<ThreadPoolTask<?>, Thread> timerThreads = new ConcurrentHashMap<>();
+    private final @NotNull ThreadPoolStatistics statistics = new ThreadPoolStatistics(this);
+    volatile boolean wasShutdown = false;
+    volatile boolean wasStopped = false;
 
     /**
-     * Creates a thread pool with the given number of threads.
+     * Creates a thread pool with the given number of threads and one task queue shared by them.
      * @param threadAmount the amount of threads in the thread pool.
      * @throws IllegalArgumentException if the amount of threads is non-positive.
      */
     public ThreadPool(int threadAmount) {
-        if (threadAmount <= 0) {
+        this(threadAmount, SchedulingMode.SHARED_QUEUE);
+    }
+
+    /**
+     * Creates a thread pool with the given number of threads and scheduling mode.
+     * @param threadAmount the amount of threads in the thread pool.
+     * @param schedulingMode the way tasks are distributed between threads.
+     * @throws IllegalArgumentException if the amount of threads is non-positive.
+     */
+    public ThreadPool(int threadAmount, @NotNull SchedulingMode schedulingMode) {
+        this(threadAmount, schedulingMode, Integer.MAX_VALUE, RejectionPolicy.THROW);
+    }
+
+    /**
+     * Creates a thread pool with the given number of threads and a shared queue of bounded capacity.
+     * @param threadAmount the amount of threads in the thread pool.
+     * @param capacity the maximal amount of added tasks waiting in the queue.
+     * @param rejectionPolicy what to do with a new task when the queue is full.
+     * @throws IllegalArgumentException if the amount of threads or the capacity is non-positive.
+     */
+    public ThreadPool(int threadAmount, int capacity, @NotNull RejectionPolicy rejectionPolicy) {
+        this(threadAmount, SchedulingMode.SHARED_QUEUE, capacity, rejectionPolicy);
+    }
+
+    /**
+     * Creates a thread pool with the given number of threads, scheduling mode and capacity of the shared queue.
+     * Tasks submitted from the threads of the pool itself, such as thenApply continuations or tasks added
+     * by other tasks, are never rejected and do not wait for space, whatever their priority,
+     * so a task adding more tasks cannot fail or block its own thread. They may take the queue over its capacity.
+     * @param threadAmount the amount of threads in the thread pool.
+     * @param schedulingMode the way tasks are distributed between threads.
+     * @param capacity the maximal amount of added tasks waiting in the shared queue.
+     * @param rejectionPolicy what to do with a new task when the shared queue is full.
+     * @throws IllegalArgumentException if the amount of threads or the capacity is non-positive.
+     */
+    public ThreadPool(int threadAmount, @NotNull SchedulingMode schedulingMode,
+                      int capacity, @NotNull RejectionPolicy rejectionPolicy) {
+        this(threadAmount, threadAmount, 0, 0, schedulingMode, capacity, rejectionPolicy);
+    }
+
+    /**
+     * Creates an elastic thread pool. It keeps the core threads all the time and adds more threads, up to the maximum,
+     * when added tasks wait in the shared queue for longer than the growth latency while no thread is idle.
+     * Once all threads are busy, a monitor thread waits until the oldest queued task has waited for the growth latency,
+     * so the pool grows even if all its threads are blocked, for example waiting for queued tasks.
+     * New threads are added one at a time: the next one is added after the previous one has taken a task.
+     * Threads above the core amount finish after staying idle for the keep-alive time.
+     * @param coreThreadAmount the amount of threads that are always in the pool.
+     * @param maxThreadAmount the maximal amount of threads in the pool.
+     * @param keepAliveTime the time after which an idle thread above the core amount finishes,
+     * with zero such a thread finishes as soon as it finds no task. Core threads wait for tasks without a timeout.
+     * @param growthLatency the time a task may wait in the queue before a new thread is added.
+     * @param unit the unit of the keep-alive time and the growth latency.
+     * @throws IllegalArgumentException if the core amount of threads is non-positive,
+     * the maximal amount is less than the core one, or the times are negative.
+     */
+    public ThreadPool(int coreThreadAmount, int maxThreadAmount, long keepAliveTime, long growthLatency,
+                      @NotNull TimeUnit unit) {
+        this(coreThreadAmount, maxThreadAmount, unit.toNanos(keepAliveTime), unit.toNanos(growthLatency),
+                SchedulingMode.SHARED_QUEUE, Integer.MAX_VALUE, RejectionPolicy.THROW);
+    }
+
+    /** Creates a thread pool with all parameters, validating them. */
+    private ThreadPool(int coreThreadAmount, int maxThreadAmount, long keepAliveNanos, long growthLatencyNanos,
+                       @NotNull SchedulingMode schedulingMode, int capacity, @NotNull RejectionPolicy rejectionPolicy) {
+        if (coreThreadAmount <= 0) {
             throw new IllegalArgumentException("Thread amount should be positive.");
         }
-        threads = new Thread[threadAmount];
-        taskQueue = new LinkedList<>();
-        for (int i = 0; i < threadAmount; i++) {
-            threads[i] = new Thread(() -> {
-                while (!wasShutdown) {
-                    ThreadPoolTask currentTask = null;
-                    if (!taskQueue.isEmpty()) {
-                        synchronized (taskQueue) {
-                            if (!taskQueue.isEmpty()) {
-                                currentTask = taskQueue.removeFirst();
-                            }
-                        }
-                    }
-                    if (currentTask != null) {
-                        currentTask.execute();
-                    }
-                }
-            });
-            threads[i].start();
+        if (maxThreadAmount < coreThreadAmount) {
+            throw new IllegalArgumentException("Maximal thread amount should not be less than the core one.");
+        }
+        if (keepAliveNanos < 0 || growthLatencyNanos < 0) {
+            throw new IllegalArgumentException("Keep-alive time and growth latency should be non-negative.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive.");
+        }
+        this.coreThreadAmount = coreThreadAmount;
+        this.maxThreadAmount = maxThreadAmount;
+        this.keepAliveNanos = keepAliveNanos;
+        this.growthLatencyNanos = growthLatencyNanos;
+        this.schedulingMode = schedulingMode;
+        this.capacity = capacity;
+        this.rejectionPolicy = rejectionPolicy;
+        taskThreadFactory = null;
+        var coreThreads = new Worker[coreThreadAmount];
+        keyLanes = new KeyLane[coreThreadAmount];
+        for (int i = 0; i < coreThreadAmount; i++) {
+            coreThreads[i] = new Worker(this);
+            keyLanes[i] = new KeyLane(coreThreads[i]);
+            coreThreads[i].keyLane = keyLanes[i];
+        }
+        threads = coreThreads;
+        peakThreadAmount.set(coreThreadAmount);
+        for (var thread : coreThreads) {
+            thread.start();
+        }
+    }
+
+    /** Creates a thread pool without fixed threads that starts a new thread for every task. */
+    private ThreadPool(@NotNull ThreadFactory taskThreadFactory) {
+        coreThreadAmount = 0;
+        maxThreadAmount = 0;
+        keepAliveNanos = 0;
+        growthLatencyNanos = 0;
+        schedulingMode = SchedulingMode.SHARED_QUEUE;
+        capacity = Integer.MAX_VALUE;
+        rejectionPolicy = RejectionPolicy.THROW;
+        this.taskThreadFactory = taskThreadFactory;
+        threads = new Worker[0];
+        keyLanes = new KeyLane[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < keyLanes.length; i++) {
+            keyLanes[i] = new KeyLane(null);
+        }
+    }
+
+    /**
+     * Creates a thread pool that runs every task on its own virtual thread,
+     * so tasks blocked on I/O do not occupy any platform thread.
+     * On Java versions without virtual threads every task gets its own platform thread instead.
+     * @return the created thread pool.
+     */
+    @NotNull public static ThreadPool newVirtualThreadPool() {
+        ThreadFactory factory;
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException exception) {
+            factory = runnable -> {
+                var thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            };
         }
+        return new ThreadPool(factory);
     }
 
     /**
-     * Shuts down ThreadPool and interrupts all threads in it. Joins all threads afterwards.
+     * Shuts down ThreadPool: it stops accepting new tasks, but its threads finish all queued tasks
+     * along with their continuations. Joins all threads afterwards.
      * @throws InterruptedException if joining of threads was interrupted.
      */
     public void shutdown() throws InterruptedException {
-        wasShutdown = true;
-        Arrays.stream(threads).forEach(Thread::interrupt);
+        initiateShutdown();
+        cancelTimers(true);
         for (var thread : threads) {
             thread.join();
         }
+        Thread monitor = growthMonitor;
+        if (monitor != null) {
+            monitor.join();
+        }
+        while (!taskThreads.isEmpty()) {
+            for (var thread : taskThreads) {
+                thread.join();
+            }
+        }
+        cancelTimers(false); // timers that became due after the last thread had finished
+    }
+
+    /**
+     * Shuts down ThreadPool without waiting for queued tasks: they are removed from the queues and cancelled,
+     * threads running tasks are interrupted. Does not wait for the running tasks to finish.
+     * @return the tasks that were cancelled before they started.
+     */
+    @NotNull public List<LightFuture<?>> shutdownNow() {
+        wasStopped = true;
+        initiateShutdown();
+        List<LightFuture<?>> unstartedTasks = cancelTimers(false);
+        ThreadPoolTask<?> task;
+        for (var priority : Worker.HIGH_PRIORITY_FIRST) {
+            while ((task = queueOf(priority).poll()) != null) {
+                releaseQueueSlot(task);
+                if (task.cancel()) {
+                    unstartedTasks.add(task);
+                }
+            }
+        }
+        DeadlineEntry entry;
+        while ((entry = deadlineQueue.pollFirst()) != null) {
+            releaseQueueSlot(entry.task);
+            if (entry.task.cancel()) {
+                unstartedTasks.add(entry.task);
+            }
+        }
+        for (var lane : keyLanes) {
+            while ((task = lane.tasks.poll()) != null) {
+                if (task.cancel()) {
+                    unstartedTasks.add(task);
+                }
+            }
+        }
+        for (var thread : threads) {
+            while ((task = thread.localTasks.poll()) != null) {
+                if (task.cancel()) {
+                    unstartedTasks.add(task);
+                }
+            }
+            thread.interrupt();
+        }
+        taskThreads.forEach(Thread::interrupt);
+        return unstartedTasks;
+    }
+
+    /**
+     * Waits until all threads of the pool finish after it was shut down.
+     * @param timeout the maximal time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if the pool has terminated or false if the time ran out.
+     * @throws InterruptedException if the waiting was interrupted.
+     */
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (var thread : threads) {
+            TimeUnit.NANOSECONDS.timedJoin(thread, deadline - System.nanoTime());
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        Thread monitor = growthMonitor;
+        if (monitor != null) {
+            TimeUnit.NANOSECONDS.timedJoin(monitor, deadline - System.nanoTime());
+            if (monitor.isAlive()) {
+                return false;
+            }
+        }
+        while (!taskThreads.isEmpty()) {
+            for (var thread : taskThreads) {
+                TimeUnit.NANOSECONDS.timedJoin(thread, deadline - System.nanoTime());
+                if (thread.isAlive()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if shutdown or shutdownNow was called, so the pool does not accept new tasks. */
+    public boolean isShutdown() {
+        return wasShutdown;
+    }
+
+    /** Forbids adding new tasks and wakes up all threads waiting for tasks or for space in the queue. */
+    private void initiateShutdown() {
+        threadsLock.lock();
+        try {
+            wasShutdown = true;
+        } finally {
+            threadsLock.unlock();
+        }
+        for (var thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        Thread monitor = growthMonitor;
+        if (monitor != null) {
+            LockSupport.unpark(monitor);
+        }
+        taskThreads.forEach(LockSupport::unpark); // threads waiting for timers cancel them
+        queueLock.lock();
+        try {
+            queueNotFull.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Removes timers from the heap and cancels their tasks.
+     * @param keepDue whether the timers that are already due stay in the heap, so that threads execute them.
+     * @return the cancelled tasks.
+     */
+    @NotNull private List<LightFuture<?>> cancelTimers(boolean keepDue) {
+        List<TimerEntry> entries = timers.removeAll(keepDue);
+        List<LightFuture<?>> cancelledTasks = new ArrayList<>();
+        for (var entry : entries) {
+            if (entry.future.cancel()) {
+                cancelledTasks.add(entry.future);
+            }
+        }
+        return cancelledTasks;
+    }
+
+    /** Returns true if the current thread runs tasks of this pool. */
+    boolean isPoolThread() {
+        return currentWorker() != null || taskThreads.contains(Thread.currentThread());
     }
 
     /**
@@ -66,110 +375,922 @@ public class ThreadPool {
      * @return the created task.
      */
     @NotNull public <T> LightFuture<T> add(@NotNull Supplier<T> supplier) {
+        return add(supplier, TaskPriority.NORMAL);
+    }
+
+    /**
+     * Creates a task of the given priority from the given supplier and adds it to pool queue for processing.
+     * Tasks created by thenApply and other methods of the task get the same priority.
+     * Priorities are ignored by the pool without fixed threads.
+     * @param supplier a supplier for the task creation.
+     * @param priority the priority of the task.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @return the created task.
+     */
+    @NotNull public <T> LightFuture<T> add(@NotNull Supplier<T> supplier, @NotNull TaskPriority priority) {
         if (wasShutdown) {
             throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
         }
-        ThreadPoolTask<T> task = new ThreadPoolTask<>(supplier);
-        task.submit();
+        ThreadPoolTask<T> task = new ThreadPoolTask<>(this, supplier::get);
+        task.setPriority(priority);
+        enqueue(task, true);
         return task;
     }
 
     /**
-     * Class that stores tasks for this ThreadPool.
-     * @param <T> the type of resulting value for the task.
+     * Creates a task from the given supplier and adds it to the queue of the thread chosen by the hash code of the key.
+     * Tasks with equal keys are executed one after another in the order they were added, on the same thread,
+     * so the data they share stays in the cache of one core and needs no locks.
+     * Other threads never take these tasks, so they wait while their thread executes a long task.
+     * Tasks created by thenApply and other methods of the task are scheduled as usual.
+     * Keyed tasks are not limited by the capacity of the shared queue and are not counted in its size.
+     * The pool without fixed threads executes tasks with equal keys one after another on its own threads.
+     * @param key the key of the task.
+     * @param supplier a supplier for the task creation.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @return the created task.
      */
-    private class ThreadPoolTask<T> implements LightFuture<T> {
-        private final @NotNull Supplier<T> supplier;
-        private volatile boolean ready = false;
-        private @Nullable T result = null;
-        private @Nullable Exception exception = null;
-        private final @NotNull List<ThreadPoolTask<?>> toApply = new ArrayList<>();
+    @NotNull public <T> LightFuture<T> add(@NotNull Object key, @NotNull Supplier<T> supplier) {
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        ThreadPoolTask<T> task = new ThreadPoolTask<>(this, supplier::get);
+        int hash = key.hashCode();
+        scheduleKeyed(task, keyLanes[Math.floorMod(hash ^ hash >>> 16, keyLanes.length)]);
+        return task;
+    }
 
-        private ThreadPoolTask(@NotNull Supplier<T> supplier) {
-            this.supplier = supplier;
+    /**
+     * Creates a task from the given supplier that should start before the given deadline and adds it to pool queue.
+     * Tasks with deadlines are taken before other tasks, the earliest deadline first.
+     * If the deadline passes before the task starts, the task is not executed
+     * and get throws LightExecutionException caused by TimeoutException.
+     * @param supplier a supplier for the task creation.
+     * @param deadline the time from now within which the task should start.
+     * @param unit the unit of the deadline.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @return the created task.
+     */
+    @NotNull public <T> LightFuture<T> add(@NotNull Supplier<T> supplier, long deadline, @NotNull TimeUnit unit) {
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
         }
+        ThreadPoolTask<T> task = new ThreadPoolTask<>(this, supplier::get);
+        scheduleBefore(task, System.nanoTime() + unit.toNanos(deadline));
+        return task;
+    }
 
-        /** Returns true if task has been executed or false otherwise. */
-        @Override
-        public boolean isReady() {
-            return ready;
+    /**
+     * Creates a task from the given supplier that is executed after the given delay.
+     * Timers are kept in a heap that workers check when they look for tasks, an idle worker
+     * waits for the earliest timer, so no extra thread is needed. If all threads are busy with long tasks,
+     * the task starts when one of them is free. Timers that are not due yet are cancelled on shutdown,
+     * a cancelled timer leaves the heap once cancelled timers make up most of it.
+     * @param supplier a supplier for the task creation.
+     * @param delay the time from now after which the task is executed.
+     * @param unit the unit of the delay.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @return the created task.
+     */
+    @NotNull public <T> LightFuture<T> schedule(@NotNull Supplier<T> supplier, long delay, @NotNull TimeUnit unit) {
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
         }
+        ThreadPoolTask<T> task = new ThreadPoolTask<>(this, supplier::get);
+        watchTimerCancellation(task);
+        addTimer(new TimerEntry(task, task, System.nanoTime() + unit.toNanos(delay)));
+        return task;
+    }
 
-        /**
-         * Returns result of the execution of the task.
-         * @return result of the execution of the task.
-         * @throws LightExecutionException if exception occurred in supplier's calculation.
-         */
-        @Override
-        @Nullable public T get() throws LightExecutionException {
-            if (!ready) { // optimization to simultaneously calculate gets after execution
-                synchronized (this) {
-                    while (!ready) {
-                        try {
-                            wait();
-                        } catch (InterruptedException exception) {
-                            throw new LightExecutionException(exception);
-                        }
-                    }
+    /**
+     * Executes the given action periodically: first after the initial delay, then every period after the time
+     * the previous execution was scheduled for. Executions never overlap, a late execution is followed
+     * by the missed ones at once. Timers work the same way as in schedule.
+     * @param action the action to execute.
+     * @param initialDelay the time from now after which the action is executed the first time.
+     * @param period the time between the starts of executions.
+     * @param unit the unit of the delay and the period.
+     * @throws IllegalArgumentException if the period is non-positive.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @return a task that is never completed normally: it fails with the exception of a failed execution,
+     * or is cancelled by cancel or by the shutdown of the pool, which stops further executions.
+     */
+    @NotNull public LightFuture<Void> scheduleAtFixedRate(@NotNull Runnable action, long initialDelay, long period,
+                                                         @NotNull TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period should be positive.");
+        }
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        var periodicTask = new ThreadPoolTask<Void>(this, null);
+        watchTimerCancellation(periodicTask);
+        schedulePeriodic(periodicTask, action, System.nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period));
+        return periodicTask;
+    }
+
+    /** Adds a timer for the next execution of the periodic task unless it was completed or the pool was shut down. */
+    private void schedulePeriodic(@NotNull ThreadPoolTask<Void> periodicTask, @NotNull Runnable action,
+                                  long time, long period) {
+        var execution = new ThreadPoolTask<Void>(this, () -> {
+            if (periodicTask.isReady()) {
+                return null;
+            }
+            try {
+                action.run();
+            } catch (Exception exception) {
+                periodicTask.complete(null, exception);
+                return null;
+            }
+            schedulePeriodic(periodicTask, action, time + period, period);
+            return null;
+        });
+        if (wasShutdown) {
+            periodicTask.cancel();
+            return;
+        }
+        if (!periodicTask.isReady()) { // it could have been cancelled during the execution
+            addTimer(new TimerEntry(execution, periodicTask, time));
+        }
+    }
+
+    /**
+     * Makes the cancellation of the task returned to the user for a timer wake up the thread waiting for the timer
+     * in the pool without fixed threads, or count the timer as cancelled and purge the heap if such timers
+     * make up most of it, so that scheduling and cancelling tasks does not fill the heap.
+     */
+    private void watchTimerCancellation(@NotNull ThreadPoolTask<?> future) {
+        future.whenReady(() -> {
+            if (!(future.failure() instanceof CancellationException)) {
+                return;
+            }
+            if (taskThreadFactory != null) {
+                Thread thread = timerThreads.get(future);
+                if (thread != null) {
+                    LockSupport.unpark(thread);
                 }
+                return;
             }
-            if (exception != null) {
-                throw new LightExecutionException(exception);
+            timers.onCancelled();
+        });
+    }
+
+    /**
+     * Puts the timer into the heap. If it is the earliest one, wakes up the worker waiting for timers
+     * or some idle worker to become such. The pool without fixed threads starts a thread that waits for the timer.
+     */
+    private void addTimer(@NotNull TimerEntry entry) {
+        if (taskThreadFactory != null) {
+            startTaskThread(entry);
+            return;
+        }
+        boolean isEarliest = timers.add(entry);
+        if (wasShutdown) { // the timers could have been cancelled before this one got in
+            if (timers.remove(entry)) {
+                entry.future.cancel();
+            }
+            return;
+        }
+        if (isEarliest) {
+            Worker waiter = timerWaiter.get();
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            } else {
+                wakeUpIdleWorker();
             }
+        }
+    }
+
+    /** Takes the task of the earliest timer if it is due, waking up another worker if more timers are due. */
+    @Nullable ThreadPoolTask<?> pollDueTimer() {
+        TimerEntry entry = timers.pollDue();
+        if (entry == null) {
+            return null;
+        }
+        if (timers.hasDueTimer()) {
+            wakeUpIdleWorker();
+        }
+        return entry.task;
+    }
+
+    /**
+     * Adds tasks created from the given suppliers to the pool as one batch. Instead of a task per supplier,
+     * a few runner tasks are queued at once, and they take the suppliers in chunks until none are left.
+     * The futures of single tasks are created only when requested from the batch.
+     * If a supplier throws an exception, the batch fails with the exception of the first such supplier,
+     * the other suppliers are still executed.
+     * @param suppliers the suppliers for the tasks creation.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     * @return the future of the batch.
+     */
+    @NotNull public <T> LightBatchFuture<T> addAll(@NotNull Collection<? extends Supplier<? extends T>> suppliers) {
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        var batch = new BatchTask<T>(this, suppliers.toArray(new Supplier<?>[0]));
+        int size = batch.size();
+        if (size == 0) {
+            batch.onItemsFinished(0);
+            return batch;
+        }
+        int parallelism = taskThreadFactory != null ? Runtime.getRuntime().availableProcessors() : threads.length;
+        batch.chunkSize = Math.max(1, size / (parallelism * CHUNKS_PER_THREAD));
+        int chunkAmount = (size + batch.chunkSize - 1) / batch.chunkSize;
+        var runners = new ArrayList<ThreadPoolTask<?>>();
+        for (int i = 0; i < Math.min(parallelism, chunkAmount); i++) {
+            var runner = new ThreadPoolTask<Void>(this, batch::runChunks);
+            runner.whenReady(() -> {
+                Exception failure = runner.failure();
+                if (failure != null) { // the runner was dropped or cancelled before it started
+                    batch.failUnclaimedItems(failure);
+                }
+            });
+            runners.add(runner);
+        }
+        scheduleRunners(runners);
+        return batch;
+    }
+
+    /**
+     * Calls the given action for every index of the range in the pool. The range is split lazily:
+     * a thread executing a part of it splits off a half as a new task only while other threads lack work,
+     * otherwise it proceeds sequentially. Parts are joined without blocking threads.
+     * If the action throws an exception for some index, the remaining indices are skipped.
+     * @param from the first index of the range.
+     * @param to the index after the last one of the range.
+     * @param action an action to call for every index.
+     * @throws IllegalArgumentException if the start of the range is greater than its end.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     * @return a new LightFuture task that is ready when the action has been called for all indices.
+     */
+    @NotNull public LightFuture<Void> parallelFor(int from, int to, @NotNull IntConsumer action) {
+        return forRange(from, to, null, (accumulator, start, end) -> {
+            for (int i = start; i < end; i++) {
+                action.accept(i);
+            }
+            return null;
+        }, (left, right) -> null);
+    }
+
+    /**
+     * Maps every index of the range to a value and combines the values in the pool.
+     * The range is split the same way as by parallelFor.
+     * @param from the first index of the range.
+     * @param to the index after the last one of the range.
+     * @param identity the identity of the combiner, the result for an empty range.
+     * @param mapper a function that maps an index to a value.
+     * @param combiner an associative function that combines two values, left one is for smaller indices.
+     * @param <T> the type of the values.
+     * @throws IllegalArgumentException if the start of the range is greater than its end.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     * @return a new LightFuture task with the combination of values of all indices.
+     */
+    @NotNull public <T> LightFuture<T> parallelReduce(int from, int to, @Nullable T identity,
+            @NotNull IntFunction<? extends T> mapper, @NotNull BinaryOperator<T> combiner) {
+        return forRange(from, to, identity, (accumulator, start, end) -> {
+            for (int i = start; i < end; i++) {
+                accumulator = combiner.apply(accumulator, mapper.apply(i));
+            }
+            return accumulator;
+        }, combiner);
+    }
+
+    /**
+     * Creates a task with the combination of the results of the action for parts of the range.
+     * @throws IllegalArgumentException if the start of the range is greater than its end.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     */
+    @NotNull private <T> LightFuture<T> forRange(int from, int to, @Nullable T identity,
+            @NotNull RangeAction<T> action, @NotNull BinaryOperator<T> combiner) {
+        if (from > to) {
+            throw new IllegalArgumentException("Range start should not be greater than its end.");
+        }
+        if (wasShutdown) {
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        var result = new ThreadPoolTask<T>(this, null);
+        if (from == to) {
+            result.complete(identity, null);
             return result;
         }
+        int parallelism = taskThreadFactory != null ? Runtime.getRuntime().availableProcessors() : threads.length;
+        int grain = (int) Math.max(1, ((long) to - from) / ((long) parallelism * RANGE_CHUNKS_PER_THREAD));
+        enqueue(new RangeNode<>(this, null, from, to, identity, action, combiner, grain, result).toTask(), true);
+        return result;
+    }
 
-        /** Submits this task to be executed in the ThreadPool.
-         * @throws IllegalStateException if ThreadPool was shut down.
-         */
-        private void submit() {
-            if (wasShutdown) {
+    /** Returns true if there are idle workers or no queued tasks for them, so that splitting a range pays off. */
+    boolean needsMoreTasks() {
+        if (!idleWorkers.isEmpty()) {
+            return true;
+        }
+        Worker worker = currentWorker();
+        return queuedTaskAmount.get() == 0 && (worker == null || worker.localTasks.isEmpty());
+    }
+
+    /** Returns the amount of tasks currently waiting in the shared queue, cancelled tasks are not counted. */
+    public int getQueueSize() {
+        return queuedTaskAmount.get();
+    }
+
+    /** Returns the amount of tasks rejected or dropped because the shared queue was full. */
+    public long getRejectedTaskAmount() {
+        return rejectedTaskAmount.get();
+    }
+
+    /** Returns the amount of threads currently in the pool. */
+    public int getThreadAmount() {
+        return threads.length + taskThreads.size();
+    }
+
+    /** Returns the largest amount of threads that have been in the pool at the same time. */
+    public int getPeakThreadAmount() {
+        return peakThreadAmount.get();
+    }
+
+    /** Returns the amount of threads currently waiting for tasks. */
+    public int getIdleThreadAmount() {
+        return idleWorkers.size();
+    }
+
+    /** Returns the statistics of this pool, they are disabled until enabled explicitly. */
+    @NotNull public ThreadPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Creates a task that is completed when all the given tasks are.
+     * Does not occupy any thread while waiting.
+     * @param futures the tasks to wait for.
+     * @return a new LightFuture task with null result,
+     * or with the exception of the first of the given tasks that failed.
+     */
+    @NotNull public LightFuture<Void> allOf(@NotNull LightFuture<?>... futures) {
+        var all = new ThreadPoolTask<Void>(this, null);
+        var pending = new AtomicInteger(futures.length);
+        if (futures.length == 0) {
+            all.complete(null, null);
+        }
+        for (var future : futures) {
+            ThreadPoolTask<?> task = toTask(future);
+            task.whenReady(() -> {
+                Exception failure = task.failure();
+                if (failure != null) {
+                    all.complete(null, failure);
+                } else if (pending.decrementAndGet() == 0) {
+                    all.complete(null, null);
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Creates a task that is completed with the outcome of the first of the given tasks to be ready.
+     * Does not occupy any thread while waiting.
+     * @param futures the tasks to wait for, a task of an empty array is never ready.
+     * @param <T> the type of the tasks.
+     * @return a new LightFuture task.
+     */
+    @SafeVarargs
+    @NotNull public final <T> LightFuture<T> anyOf(@NotNull LightFuture<? extends T>... futures) {
+        var any = new ThreadPoolTask<T>(this, null);
+        for (var future : futures) {
+            any.completeWith(future);
+        }
+        return any;
+    }
+
+    /**
+     * Puts the task of normal priority into the queue of the current worker in work stealing mode
+     * or into the shared queue of its priority otherwise, then wakes up an idle worker.
+     * @param added whether the task is added by the user and is subject to the capacity of the shared queue
+     * unless it is added from a thread of the pool.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     */
+    void enqueue(@NotNull ThreadPoolTask<?> task, boolean added) {
+        if (statistics.isEnabled() || isElastic()) {
+            task.scheduledTime = System.nanoTime();
+        }
+        if (taskThreadFactory != null) {
+            startTaskThread(task);
+            return;
+        }
+        Worker worker = schedulingMode == SchedulingMode.WORK_STEALING && task.getPriority() == TaskPriority.NORMAL
+                ? currentWorker() : null;
+        if (worker != null) {
+            worker.localTasks.addLast(task);
+        } else {
+            if (!added) {
+                task.isInternal = true;
+                queuedTaskAmount.incrementAndGet();
+            } else if (!reserveQueueSlot(task)) {
+                return;
+            }
+            task.enterQueue();
+            Queue<ThreadPoolTask<?>> queue = queueOf(task.getPriority());
+            queue.add(task);
+            if (added && wasShutdown && queue.remove(task)) { // the pool could have drained before the task got in
+                releaseQueueSlot(task);
                 throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
             }
-            synchronized (taskQueue) {
-                taskQueue.add(this);
+        }
+        wakeUpIdleWorker();
+    }
+
+    /**
+     * Puts the task into the key lane and wakes up the worker owning it. In the pool without fixed threads
+     * starts a thread executing the tasks of the lane if there is none.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     */
+    private void scheduleKeyed(@NotNull ThreadPoolTask<?> task, @NotNull KeyLane lane) {
+        if (statistics.isEnabled() || isElastic()) {
+            task.scheduledTime = System.nanoTime();
+        }
+        lane.tasks.add(task);
+        if (wasShutdown && lane.tasks.remove(task)) { // the lane could have drained before the task got in
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        if (lane.owner != null) {
+            LockSupport.unpark(lane.owner);
+        } else if (lane.isRunning.compareAndSet(false, true)) {
+            startTaskThread(() -> runKeyLane(lane));
+        }
+    }
+
+    /**
+     * Executes the tasks of the lane of the pool without fixed threads until it is empty.
+     * The lane is released before the exit, so a task added at that moment starts a new thread or is taken here.
+     */
+    private void runKeyLane(@NotNull KeyLane lane) {
+        do {
+            ThreadPoolTask<?> task;
+            while ((task = lane.tasks.poll()) != null) {
+                runTask(task);
+            }
+            lane.isRunning.set(false);
+        } while (!lane.tasks.isEmpty() && lane.isRunning.compareAndSet(false, true));
+    }
+
+    /**
+     * Puts the added runner tasks of a batch into the shared queue in one operation. The batch takes one place
+     * in the queue: the rejection policy is applied to the first runner, which can execute the whole batch,
+     * and the others are internal tasks of the pool that help it. So runners of a batch are never dropped.
+     * @throws IllegalStateException if ThreadPool was shut down.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     */
+    private void scheduleRunners(@NotNull List<ThreadPoolTask<?>> runners) {
+        if (taskThreadFactory != null || schedulingMode == SchedulingMode.WORK_STEALING && currentWorker() != null) {
+            for (var runner : runners) {
+                enqueue(runner, false);
+            }
+            return;
+        }
+        if (!reserveQueueSlot(runners.get(0))) {
+            return; // the caller has run the batch
+        }
+        queuedTaskAmount.addAndGet(runners.size() - 1);
+        long time = statistics.isEnabled() || isElastic() ? System.nanoTime() : 0;
+        for (var runner : runners) {
+            runner.scheduledTime = time;
+            runner.isInternal = true;
+            runner.enterQueue();
+        }
+        taskQueue.addAll(runners);
+        if (wasShutdown) { // the pool could have drained before the runners got in
+            int removedAmount = 0;
+            for (var runner : runners) {
+                if (taskQueue.remove(runner)) {
+                    releaseQueueSlot(runner);
+                    removedAmount++;
+                }
+            }
+            if (removedAmount == runners.size()) {
+                throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
             }
         }
+        for (int i = 0; i < runners.size(); i++) {
+            wakeUpIdleWorker();
+        }
+    }
+
+    /**
+     * Puts the added task into the shared queue of tasks with deadlines, then wakes up an idle worker.
+     * @param deadline the value of System.nanoTime() before which the task should start.
+     * @throws RejectedExecutionException if the queue is full and the rejection policy is THROW.
+     */
+    private void scheduleBefore(@NotNull ThreadPoolTask<?> task, long deadline) {
+        if (statistics.isEnabled() || isElastic()) {
+            task.scheduledTime = System.nanoTime();
+        }
+        if (taskThreadFactory != null) {
+            startTaskThread(task);
+            return;
+        }
+        if (!reserveQueueSlot(task)) {
+            return;
+        }
+        task.enterQueue();
+        var entry = new DeadlineEntry(task, deadline, deadlineEntryNumber.getAndIncrement());
+        deadlineQueue.add(entry);
+        if (wasShutdown && deadlineQueue.remove(entry)) {
+            releaseQueueSlot(task);
+            throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+        }
+        wakeUpIdleWorker();
+    }
 
-        /** Executes the task by getting the result from the supplier, is run once. */
-        private void execute() {
+    /** Unparks some worker waiting for tasks if there is one, otherwise lets the elastic pool check if it should grow. */
+    void wakeUpIdleWorker() {
+        Worker idleWorker = idleWorkers.poll();
+        if (idleWorker != null) {
+            LockSupport.unpark(idleWorker);
+        } else if (isElastic() && threads.length < maxThreadAmount) {
+            requestGrowthCheck();
+        }
+    }
+
+    /** Returns true if the amount of threads in the pool may change. */
+    private boolean isElastic() {
+        return maxThreadAmount > coreThreadAmount;
+    }
+
+    /** Makes the growth monitor check how long queued tasks wait, starting the monitor on the first request. */
+    void requestGrowthCheck() {
+        if (isGrowthCheckRequested.get() || !isGrowthCheckRequested.compareAndSet(false, true)) {
+            return; // the monitor has not handled the previous request yet and will see the queue as it is now
+        }
+        Thread monitor = growthMonitor;
+        if (monitor == null) {
+            threadsLock.lock();
             try {
-                result = supplier.get();
-            } catch (Exception exception) {
-                this.exception = exception;
-            }
-            ready = true;
-            synchronized (this) {
-                notifyAll();
-            }
-            synchronized (toApply) {
-                toApply.forEach(ThreadPoolTask::submit);
-            }
-        }
-
-        /**
-         * Applies the given function to the result of the task.
-         * @param function a function to apply to the result of this task.
-         * @param <R> the type of the new task.
-         * @return a new LightFuture task.
-         */
-        @Override
-        @NotNull public <R> LightFuture<R> thenApply(@NotNull Function<? super T, R> function) {
-            var task = new ThreadPoolTask<>(() -> {
-                try {
-                    return function.apply(ThreadPoolTask.this.get());
-                } catch (LightExecutionException exception) {
-                    throw new RuntimeException(exception);
+                monitor = growthMonitor;
+                if (monitor == null) {
+                    if (wasShutdown) {
+                        return;
+                    }
+                    monitor = new Thread(this::monitorGrowth);
+                    monitor.setDaemon(true);
+                    growthMonitor = monitor;
+                    monitor.start();
+                    return;
                 }
-            });
-            synchronized (toApply) {
-                if (ready) {
-                    task.submit();
+            } finally {
+                threadsLock.unlock();
+            }
+        }
+        LockSupport.unpark(monitor);
+    }
+
+    /**
+     * Executes the growth monitor until the pool is shut down. While tasks are queued, no worker is idle or starting
+     * and the pool may grow, the monitor waits until the oldest task has waited for the growth latency and adds
+     * a worker. Otherwise it parks until the next request. A request that comes while the monitor is checking
+     * the queue makes it check again, so none is lost.
+     */
+    private void monitorGrowth() {
+        while (!wasShutdown) {
+            ThreadPoolTask<?> oldestTask = threads.length < maxThreadAmount && idleWorkers.isEmpty()
+                    && startingWorkerAmount.get() == 0 ? oldestQueuedTask() : null;
+            if (oldestTask == null) {
+                if (!isGrowthCheckRequested.getAndSet(false)) {
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+            long timeLeft = oldestTask.scheduledTime + growthLatencyNanos - System.nanoTime();
+            if (timeLeft > 0) {
+                LockSupport.parkNanos(this, timeLeft);
+            } else {
+                addWorker();
+            }
+        }
+    }
+
+    /**
+     * Returns the task that has waited for the longest time among the next tasks of all shared queues,
+     * which is the task with the earliest deadline for the queue of tasks with deadlines, or null if they are empty.
+     */
+    private @Nullable ThreadPoolTask<?> oldestQueuedTask() {
+        ThreadPoolTask<?> oldestTask = null;
+        for (var priority : PRIORITIES) {
+            oldestTask = olderTask(oldestTask, queueOf(priority).peek());
+        }
+        for (var entry : deadlineQueue) {
+            oldestTask = olderTask(oldestTask, entry.task);
+            break;
+        }
+        return oldestTask;
+    }
+
+    /** Returns the task that was scheduled earlier of the two, either of which may be null. */
+    private static @Nullable ThreadPoolTask<?> olderTask(@Nullable ThreadPoolTask<?> first,
+                                                        @Nullable ThreadPoolTask<?> second) {
+        if (first == null || second != null && second.scheduledTime - first.scheduledTime < 0) {
+            return second;
+        }
+        return first;
+    }
+
+    /** Adds a new worker to the elastic pool unless it is full or was shut down. */
+    private void addWorker() {
+        threadsLock.lock();
+        try {
+            if (wasShutdown || threads.length >= maxThreadAmount) {
+                return;
+            }
+            var worker = new Worker(this);
+            worker.isStarting = true;
+            startingWorkerAmount.incrementAndGet();
+            var newThreads = Arrays.copyOf(threads, threads.length + 1);
+            newThreads[threads.length] = worker;
+            threads = newThreads;
+            peakThreadAmount.accumulateAndGet(getThreadAmount(), Math::max);
+            worker.start();
+        } finally {
+            threadsLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the idle worker from the pool if there are more workers than the core amount.
+     * @return true if the worker was removed and should finish.
+     */
+    boolean tryRemoveWorker(@NotNull Worker worker) {
+        threadsLock.lock();
+        try {
+            if (wasShutdown || threads.length <= coreThreadAmount || worker.keyLane != null
+                    || !worker.localTasks.isEmpty()) {
+                return false;
+            }
+            var newThreads = new Worker[threads.length - 1];
+            int index = 0;
+            for (var thread : threads) {
+                if (thread != worker) {
+                    newThreads[index++] = thread;
+                }
+            }
+            threads = newThreads;
+        } finally {
+            threadsLock.unlock();
+        }
+        if (!highPriorityQueue.isEmpty() || !taskQueue.isEmpty() || !backgroundQueue.isEmpty()
+                || !deadlineQueue.isEmpty() || timers.hasTimers()) {
+            wakeUpIdleWorker(); // this worker could have been woken up for a task it will not take
+        }
+        return true;
+    }
+
+    /**
+     * Takes the task with the earliest deadline from the shared queue.
+     * Tasks whose deadlines have passed are failed with TimeoutException on the way.
+     */
+    @Nullable ThreadPoolTask<?> pollDeadlineTask() {
+        DeadlineEntry entry;
+        while ((entry = deadlineQueue.pollFirst()) != null) {
+            releaseQueueSlot(entry.task);
+            if (entry.deadline - System.nanoTime() >= 0) {
+                return entry.task;
+            }
+            if (entry.task.complete(null, new TimeoutException("Task deadline passed before it started."))
+                    && statistics.isEnabled()) {
+                statistics.recordExpiration();
+            }
+        }
+        return null;
+    }
+
+    /** Executes the task on a new thread of the pool without fixed threads. */
+    private void startTaskThread(@NotNull ThreadPoolTask<?> task) {
+        startTaskThread(() -> runTask(task));
+    }
+
+    /**
+     * Starts a new thread of the pool without fixed threads that sleeps until the timer is due and executes it.
+     * The thread finishes early if the task is cancelled, or cancels it if the pool is shut down before the timer
+     * is due.
+     */
+    private void startTaskThread(@NotNull TimerEntry entry) {
+        startTaskThread(() -> {
+            timerThreads.put(entry.future, Thread.currentThread());
+            try {
+                long delay;
+                while ((delay = entry.time - System.nanoTime()) > 0 && !wasShutdown && !entry.future.isReady()) {
+                    LockSupport.parkNanos(this, delay);
+                }
+                if (delay > 0 || wasStopped) {
+                    entry.future.cancel();
                 } else {
-                    toApply.add(task);
+                    runTask(entry.task);
+                }
+            } finally {
+                timerThreads.remove(entry.future, Thread.currentThread());
+            }
+        });
+    }
+
+    /** Runs the action on a new thread of the pool without fixed threads. */
+    private void startTaskThread(@NotNull Runnable action) {
+        Thread thread = taskThreadFactory.newThread(() -> {
+            try {
+                action.run();
+            } finally {
+                taskThreads.remove(Thread.currentThread());
+            }
+        });
+        taskThreads.add(thread);
+        peakThreadAmount.accumulateAndGet(getThreadAmount(), Math::max);
+        thread.start();
+    }
+
+    /** Executes the task taken from a queue, recording its timings if statistics are enabled. */
+    void runTask(@NotNull ThreadPoolTask<?> task) {
+        if (!statistics.isEnabled()) {
+            task.execute();
+            return;
+        }
+        long startTime = System.nanoTime();
+        if (task.execute()) {
+            long queueWaitTime = task.scheduledTime == 0 ? 0 : startTime - task.scheduledTime;
+            statistics.recordExecution(queueWaitTime, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Takes a place for the task in the shared queue, applying the rejection policy if it is full.
+     * A task added from a thread of the pool always gets a place: rejecting it could fail the task that adds it,
+     * and waiting for space could block the only thread that frees it.
+     * @return true if the place was taken or false if the task was handled by the policy.
+     */
+    private boolean reserveQueueSlot(@NotNull ThreadPoolTask<?> task) {
+        if (currentWorker() != null) {
+            task.isInternal = true;
+            queuedTaskAmount.incrementAndGet();
+            return true;
+        }
+        while (!tryReserveQueueSlot()) {
+            switch (rejectionPolicy) {
+                case BLOCK:
+                    awaitQueueSlot();
+                    return true;
+                case CALLER_RUNS:
+                    rejectedTaskAmount.incrementAndGet();
+                    task.execute();
+                    return false;
+                case DROP_OLDEST:
+                    if (!dropOldestTask()) { // only tasks of the pool itself are queued, they will free places
+                        awaitQueueSlot();
+                        return true;
+                    }
+                    break;
+                default:
+                    rejectedTaskAmount.incrementAndGet();
+                    throw new RejectedExecutionException("Pool queue is full.");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest queued task of the lowest priority and fails it with RejectedExecutionException:
+     * background tasks go first, then tasks of normal priority, then tasks with deadlines, then tasks of high priority.
+     * Tasks submitted by the pool itself and cancelled tasks are skipped.
+     * @return false if there was no task to drop.
+     */
+    private boolean dropOldestTask() {
+        ThreadPoolTask<?> oldestTask = removeOldestTask(backgroundQueue);
+        if (oldestTask == null) {
+            oldestTask = removeOldestTask(taskQueue);
+        }
+        if (oldestTask == null) {
+            oldestTask = removeOldestDeadlineTask();
+        }
+        if (oldestTask == null) {
+            oldestTask = removeOldestTask(highPriorityQueue);
+        }
+        if (oldestTask == null) {
+            return false;
+        }
+        releaseQueueSlot(oldestTask);
+        rejectedTaskAmount.incrementAndGet();
+        oldestTask.complete(null, new RejectedExecutionException("Task was dropped from the full queue."));
+        return true;
+    }
+
+    /** Removes the first task of the shared queue that was not submitted by the pool itself and is not cancelled. */
+    private @Nullable ThreadPoolTask<?> removeOldestTask(@NotNull Queue<ThreadPoolTask<?>> queue) {
+        for (var task : queue) {
+            if (!task.isInternal && !task.isReady() && queue.remove(task)) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the task with a deadline that was added first among the ones not submitted by the pool itself
+     * and not cancelled.
+     * The queue is ordered by deadlines, so it is searched through.
+     */
+    private @Nullable ThreadPoolTask<?> removeOldestDeadlineTask() {
+        while (true) {
+            DeadlineEntry oldestEntry = null;
+            for (var entry : deadlineQueue) {
+                if (!entry.task.isInternal && !entry.task.isReady()
+                        && (oldestEntry == null || entry.number < oldestEntry.number)) {
+                    oldestEntry = entry;
                 }
             }
-            return task;
+            if (oldestEntry == null) {
+                return null;
+            }
+            if (deadlineQueue.remove(oldestEntry)) {
+                return oldestEntry.task;
+            }
         }
     }
+
+    /** Takes a place in the shared queue if it is not full. */
+    private boolean tryReserveQueueSlot() {
+        int size;
+        do {
+            size = queuedTaskAmount.get();
+            if (size >= capacity) {
+                return false;
+            }
+        } while (!queuedTaskAmount.compareAndSet(size, size + 1));
+        return true;
+    }
+
+    /** Waits until a place in the shared queue becomes free and takes it. */
+    private void awaitQueueSlot() {
+        queueLock.lock();
+        blockedProducerAmount.incrementAndGet();
+        try {
+            while (!tryReserveQueueSlot()) {
+                if (wasShutdown) {
+                    throw new IllegalStateException("Pool was shut down and does not accept new tasks.");
+                }
+                queueNotFull.awaitUninterruptibly();
+            }
+        } finally {
+            blockedProducerAmount.decrementAndGet();
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Frees the place of a task taken from the shared queue or cancelled in it and wakes up a blocked producer
+     * if there is one. The place is freed once, by whichever of these happens first.
+     */
+    void releaseQueueSlot(@NotNull ThreadPoolTask<?> task) {
+        if (!task.leaveQueue()) {
+            return;
+        }
+        queuedTaskAmount.decrementAndGet();
+        if (blockedProducerAmount.get() > 0) {
+            queueLock.lock();
+            try {
+                queueNotFull.signal();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    /** Returns the shared queue of tasks of the given priority. */
+    @NotNull Queue<ThreadPoolTask<?>> queueOf(@NotNull TaskPriority priority) {
+        switch (priority) {
+            case HIGH:
+                return highPriorityQueue;
+            case BACKGROUND:
+                return backgroundQueue;
+            default:
+                return taskQueue;
+        }
+    }
+
+    /** Returns the worker of this pool that runs the current thread or null if there is none. */
+    private @Nullable Worker currentWorker() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker && ((Worker) thread).getPool() == this) {
+            return (Worker) thread;
+        }
+        return null;
+    }
+
+    /** Returns the given future if it belongs to some ThreadPool or a task completed with its outcome. */
+    @SuppressWarnings("unchecked")
+    @NotNull <T> ThreadPoolTask<T> toTask(@NotNull LightFuture<T> future) {
+        if (future instanceof ThreadPoolTask) {
+            return (ThreadPoolTask<T>) future;
+        }
+        var task = new ThreadPoolTask<T>(this, null);
+        task.completeWith(future);
+        return task;
+    }
 }
@@ -0,0 +1,150 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms describing the work of a ThreadPool.
+ * Nothing is recorded until the statistics are enabled, disabled statistics cost one volatile read per task.
+ */
+public class ThreadPoolStatistics implements ThreadPoolStatisticsMXBean {
+    private final @NotNull ThreadPool pool;
+    private volatile boolean enabled = false;
+    private final @NotNull LongAdder executedTaskAmount = new LongAdder();
+    private final @NotNull LongAdder stolenTaskAmount = new LongAdder();
+    private final @NotNull LongAdder expiredTaskAmount = new LongAdder();
+    private final @NotNull Histogram queueWaitTime = new Histogram();
+    private final @NotNull Histogram executionTime = new Histogram();
+    private final @NotNull Histogram continuationFanOut = new Histogram();
+
+    /** Creates disabled statistics of the given pool. */
+    ThreadPoolStatistics(@NotNull ThreadPool pool) {
+        this.pool = pool;
+    }
+
+    /** Starts or stops collecting the statistics. Already collected values are kept. */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server.
+     * @param name the name of the pool that distinguishes it from other pools.
+     * @throws JMException if the registration failed.
+     */
+    public void registerMBean(@NotNull String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("ru.hse.crossopt.ThreadPool:type=ThreadPool,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public long getExecutedTaskAmount() {
+        return executedTaskAmount.sum();
+    }
+
+    @Override
+    public long getStolenTaskAmount() {
+        return stolenTaskAmount.sum();
+    }
+
+    @Override
+    public long getRejectedTaskAmount() {
+        return pool.getRejectedTaskAmount();
+    }
+
+    @Override
+    public long getExpiredTaskAmount() {
+        return expiredTaskAmount.sum();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return pool.getQueueSize();
+    }
+
+    @Override
+    public int getThreadAmount() {
+        return pool.getThreadAmount();
+    }
+
+    @Override
+    public int getPeakThreadAmount() {
+        return pool.getPeakThreadAmount();
+    }
+
+    @Override
+    public int getIdleThreadAmount() {
+        return pool.getIdleThreadAmount();
+    }
+
+    /** Returns the histogram of time tasks spent in queues before they started, in nanoseconds. */
+    @NotNull public Histogram getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    /** Returns the histogram of time of task execution, in nanoseconds. */
+    @NotNull public Histogram getExecutionTime() {
+        return executionTime;
+    }
+
+    /** Returns the histogram of amounts of continuations started when a task completes. */
+    @NotNull public Histogram getContinuationFanOut() {
+        return continuationFanOut;
+    }
+
+    @Override
+    public double getMeanQueueWaitNanos() {
+        return queueWaitTime.getMean();
+    }
+
+    @Override
+    public long getQueueWait99thPercentileNanos() {
+        return queueWaitTime.getPercentile(99);
+    }
+
+    @Override
+    public double getMeanExecutionNanos() {
+        return executionTime.getMean();
+    }
+
+    @Override
+    public long getExecution99thPercentileNanos() {
+        return executionTime.getPercentile(99);
+    }
+
+    @Override
+    public double getMeanContinuationFanOut() {
+        return continuationFanOut.getMean();
+    }
+
+    /** Records a task that waited for the given time in a queue and was executed for the given time. */
+    void recordExecution(long queueWaitNanos, long executionNanos) {
+        executedTaskAmount.increment();
+        queueWaitTime.record(queueWaitNanos);
+        executionTime.record(executionNanos);
+    }
+
+    /** Records a task taken from the deque of another thread. */
+    void recordSteal() {
+        stolenTaskAmount.increment();
+    }
+
+    /** Records a task dropped because its deadline passed. */
+    void recordExpiration() {
+        expiredTaskAmount.increment();
+    }
+
+    /** Records the amount of continuations started when a task completed. */
+    void recordFanOut(int continuationAmount) {
+        continuationFanOut.record(continuationAmount);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.hse.crossopt.ThreadPool;
+
+/** Management interface that exposes statistics of a ThreadPool through JMX. */
+public interface ThreadPoolStatisticsMXBean {
+    /** Returns whether the statistics are being collected. */
+    boolean isEnabled();
+
+    /** Returns the amount of tasks executed by the pool threads. */
+    long getExecutedTaskAmount();
+
+    /** Returns the amount of tasks taken by the pool threads from the deques of other threads. */
+    long getStolenTaskAmount();
+
+    /** Returns the amount of tasks rejected or dropped because the queue was full. */
+    long getRejectedTaskAmount();
+
+    /** Returns the amount of tasks dropped because their deadline passed before they started. */
+    long getExpiredTaskAmount();
+
+    /** Returns the amount of tasks waiting in the shared queue. */
+    int getQueueSize();
+
+    /** Returns the amount of threads in the pool. */
+    int getThreadAmount();
+
+    /** Returns the largest amount of threads that have been in the pool at the same time. */
+    int getPeakThreadAmount();
+
+    /** Returns the amount of threads waiting for tasks. */
+    int getIdleThreadAmount();
+
+    /** Returns the mean time tasks spent in queues before they started, in nanoseconds. */
+    double getMeanQueueWaitNanos();
+
+    /** Returns the 99th percentile of time tasks spent in queues before they started, in nanoseconds. */
+    long getQueueWait99thPercentileNanos();
+
+    /** Returns the mean time of task execution, in nanoseconds. */
+    double getMeanExecutionNanos();
+
+    /** Returns the 99th percentile of time of task execution, in nanoseconds. */
+    long getExecution99thPercentileNanos();
+
+    /** Returns the mean amount of continuations started when a task completes. */
+    double getMeanContinuationFanOut();
+}
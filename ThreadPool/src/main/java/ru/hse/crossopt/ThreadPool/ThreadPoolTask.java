@@ -0,0 +1,512 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Class that stores tasks for a ThreadPool.
+ * A task either runs an action in the pool or is completed by other tasks it is composed of.
+ * Its whole state is one word: the lower bits hold the stage of its life, the upper ones hold flags
+ * and the priority, which are set before the task is published, a mark that some thread waits for the task
+ * and a mark that the task holds a place in the shared queue of the pool.
+ * The outcome is a single field that holds the result or the exception, depending on the stage.
+ * @param <T> the type of resulting value for the task.
+ */
+class ThreadPoolTask<T> extends Continuation implements LightFuture<T> {
+    /** Marker that replaces the continuation stack of a task when it is executed. */
+    private static final @NotNull Continuation COMPLETED = new Continuation() {
+        @Override
+        void fire(@Nullable Exception failure) {
+        }
+    };
+    /** Amount of nested inline continuations after which the next one is submitted to the pool instead. */
+    private static final int MAX_INLINE_DEPTH = 256;
+    private static final @NotNull ThreadLocal<int[]> INLINE_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    private static final @NotNull TaskPriority[] PRIORITIES = TaskPriority.values();
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int COMPLETING = 2;
+    private static final int NORMAL = 3;
+    private static final int EXCEPTIONAL = 4;
+    private static final int STAGE_MASK = 7;
+    /** The task runs in the thread that completed the task it depends on. */
+    private static final int INLINE = 1 << 3;
+    /** The task fails with the exception of the task it depends on without running its action. */
+    private static final int PROPAGATING = 1 << 4;
+    private static final int PRIORITY_SHIFT = 5;
+    private static final int PRIORITY_MASK = 3 << PRIORITY_SHIFT;
+    /** Some thread waits for the task in get, so its completion has to notify the monitor of the task. */
+    private static final int WAITING = 1 << 7;
+    /** The task is counted in the size of the shared queue of the pool until it is taken from there or cancelled. */
+    private static final int QUEUED = 1 << 8;
+    private static final @NotNull VarHandle STATE;
+    private static final @NotNull VarHandle CONTINUATIONS;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(ThreadPoolTask.class, "state", int.class);
+            CONTINUATIONS = MethodHandles.lookup()
+                    .findVarHandle(ThreadPoolTask.class, "continuations", Continuation.class);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    /** The pool the task belongs to, its continuations are submitted there. */
+    final @NotNull ThreadPool pool;
+    private final @Nullable Callable<? extends T> action;
+    long scheduledTime = 0;
+    /** Whether the task was submitted by the pool itself, such tasks are never dropped from the full queue. */
+    boolean isInternal = false;
+    @SuppressWarnings("unused") // accessed through STATE
+    private volatile int state;
+    private @Nullable Object outcome = null;
+    @SuppressWarnings("unused") // accessed through CONTINUATIONS
+    private volatile @Nullable Continuation continuations = null;
+
+    /** Creates a task that calls the action when executed or a task completed from outside if it is null. */
+    ThreadPoolTask(@NotNull ThreadPool pool, @Nullable Callable<? extends T> action) {
+        this(pool, action, 0);
+    }
+
+    /**
+     * Creates a task that calls the action when executed.
+     * @param flags INLINE and PROPAGATING flags of the task.
+     */
+    private ThreadPoolTask(@NotNull ThreadPool pool, @Nullable Callable<? extends T> action, int flags) {
+        this.pool = pool;
+        this.action = action;
+        state = NEW | flags | TaskPriority.NORMAL.ordinal() << PRIORITY_SHIFT;
+    }
+
+    /** Returns true if task has been executed or false otherwise. */
+    @Override
+    public boolean isReady() {
+        return (state & STAGE_MASK) >= NORMAL;
+    }
+
+    /** Returns the priority of the task. */
+    @NotNull TaskPriority getPriority() {
+        return PRIORITIES[(state & PRIORITY_MASK) >>> PRIORITY_SHIFT];
+    }
+
+    /** Sets the priority of the task, is called before the task is published. */
+    void setPriority(@NotNull TaskPriority priority) {
+        state = state & ~PRIORITY_MASK | priority.ordinal() << PRIORITY_SHIFT;
+    }
+
+    /** Moves the task from one stage to another, keeping its flags, which a waiting thread may set meanwhile. */
+    private boolean casStage(int expectedStage, int newStage) {
+        int currentState;
+        do {
+            currentState = state;
+            if ((currentState & STAGE_MASK) != expectedStage) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, currentState, currentState & ~STAGE_MASK | newStage));
+        return true;
+    }
+
+    /** Marks that the task holds a place in the shared queue, is called before it is put there. */
+    void enterQueue() {
+        STATE.getAndBitwiseOr(this, QUEUED);
+    }
+
+    /**
+     * Removes the mark that the task holds a place in the shared queue.
+     * @return true if the mark was set, so that the caller has to free the place.
+     */
+    boolean leaveQueue() {
+        return ((int) STATE.getAndBitwiseAnd(this, ~QUEUED) & QUEUED) != 0;
+    }
+
+    /**
+     * Marks that the current thread is going to wait for the task, is called under the monitor of the task.
+     * @return false if the task is already ready and there is no need to wait.
+     */
+    private boolean markWaiting() {
+        int currentState;
+        do {
+            currentState = state;
+            if ((currentState & STAGE_MASK) >= NORMAL) {
+                return false;
+            }
+        } while ((currentState & WAITING) == 0 && !STATE.compareAndSet(this, currentState, currentState | WAITING));
+        return true;
+    }
+
+    /** Returns the exception of the ready task or null if it succeeded. */
+    @Nullable Exception failure() {
+        return (state & STAGE_MASK) == EXCEPTIONAL ? (Exception) outcome : null;
+    }
+
+    /** Returns the result of the ready task or null if it failed. */
+    @SuppressWarnings("unchecked")
+    @Nullable T value() {
+        return (state & STAGE_MASK) == NORMAL ? (T) outcome : null;
+    }
+
+    /**
+     * Returns result of the execution of the task.
+     * @return result of the execution of the task.
+     * @throws LightExecutionException if exception occurred in supplier's calculation.
+     */
+    @Override
+    @Nullable public T get() throws LightExecutionException {
+        if (!isReady()) { // optimization to simultaneously calculate gets after execution
+            synchronized (this) {
+                while (markWaiting()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException exception) {
+                        throw new LightExecutionException(exception);
+                    }
+                }
+            }
+        }
+        return report();
+    }
+
+    /**
+     * Returns result of the execution of the task, waiting for at most the given time.
+     * @param timeout the maximal time to wait.
+     * @param unit the unit of the timeout.
+     * @return result of the execution of the task.
+     * @throws LightExecutionException if exception occurred in supplier's calculation.
+     * @throws TimeoutException if the task is not ready after the timeout.
+     */
+    @Override
+    @Nullable public T get(long timeout, @NotNull TimeUnit unit) throws LightExecutionException, TimeoutException {
+        if (!isReady()) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (markWaiting()) {
+                    long timeLeft = deadline - System.nanoTime();
+                    if (timeLeft <= 0) {
+                        throw new TimeoutException("Task is not ready.");
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, timeLeft);
+                    } catch (InterruptedException exception) {
+                        throw new LightExecutionException(exception);
+                    }
+                }
+            }
+        }
+        return report();
+    }
+
+    /** Returns the result of the ready task or throws LightExecutionException if it failed. */
+    @Nullable private T report() throws LightExecutionException {
+        Exception failure = failure();
+        if (failure != null) {
+            throw new LightExecutionException(failure);
+        }
+        return value();
+    }
+
+    /**
+     * Attempts to cancel the task, succeeds only if it has not started yet.
+     * The task stays in the queue until some thread takes and skips it,
+     * but its place in the shared queue is freed at once.
+     * @return true if the task was cancelled.
+     */
+    @Override
+    public boolean cancel() {
+        if (!casStage(NEW, COMPLETING)) {
+            return false;
+        }
+        pool.releaseQueueSlot(this);
+        finishCompletion(null, new CancellationException("Task was cancelled."));
+        return true;
+    }
+
+    /**
+     * Submits this task to be executed in the ThreadPool.
+     * The task is cancelled if the pool was stopped, or was shut down and the current thread is not its own.
+     */
+    private void submit() {
+        if (pool.wasStopped || pool.wasShutdown && !pool.isPoolThread()) {
+            cancel();
+            return;
+        }
+        pool.enqueue(this, false);
+    }
+
+    /**
+     * Executes the task by calling its action unless the task was cancelled, is run once.
+     * @return false if the task was cancelled and not executed.
+     */
+    boolean execute() {
+        if (!casStage(NEW, RUNNING)) {
+            return false;
+        }
+        T value;
+        try {
+            value = action.call();
+        } catch (Exception exception) {
+            complete(null, exception);
+            return true;
+        }
+        complete(value, null);
+        return true;
+    }
+
+    /**
+     * Completes the task with the given result or exception, then fires its continuations.
+     * @return false if the task has already been completed.
+     */
+    boolean complete(@Nullable T value, @Nullable Exception failure) {
+        int currentState;
+        do {
+            currentState = state;
+            if ((currentState & STAGE_MASK) >= COMPLETING) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, currentState, currentState & ~STAGE_MASK | COMPLETING));
+        finishCompletion(value, failure);
+        return true;
+    }
+
+    /**
+     * Publishes the outcome of the task that was moved to the completing state and fires its continuations.
+     * The monitor of the task is taken only if some thread waits for it in get.
+     */
+    private void finishCompletion(@Nullable T value, @Nullable Exception failure) {
+        outcome = failure != null ? failure : value;
+        int finalStage = failure != null ? EXCEPTIONAL : NORMAL;
+        int currentState;
+        do {
+            currentState = state;
+        } while (!STATE.compareAndSet(this, currentState, currentState & ~STAGE_MASK | finalStage));
+        if ((currentState & WAITING) != 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        fireContinuations((Continuation) CONTINUATIONS.getAndSet(this, COMPLETED), failure);
+    }
+
+    /** Completes this task with the outcome of the given future once it is ready. */
+    void completeWith(@NotNull LightFuture<? extends T> future) {
+        if (future instanceof ThreadPoolTask) {
+            var task = (ThreadPoolTask<? extends T>) future;
+            task.whenReady(() -> complete(task.value(), task.failure()));
+        } else {
+            future.whenComplete(this::complete);
+        }
+    }
+
+    /** Returns the result of the ready task or throws the exception that occurred in it. */
+    private @Nullable T resultNow() throws Exception {
+        Exception failure = failure();
+        if (failure != null) {
+            throw failure;
+        }
+        return value();
+    }
+
+    /**
+     * Fails a propagating task with the exception of the task it depends on, executes an inline task
+     * or submits a usual one as a continuation of the task it depends on.
+     * A failure thus passes along a chain of thenApply tasks without being thrown or queued.
+     */
+    @Override
+    void fire(@Nullable Exception failure) {
+        if (failure != null && (state & PROPAGATING) != 0) {
+            runNested(() -> complete(null, failure));
+        } else if ((state & INLINE) != 0) {
+            runNested(this::execute);
+        } else {
+            submit();
+        }
+    }
+
+    /**
+     * Runs the action that completes this task in the current thread
+     * unless too many such actions are already nested in it, submits the task otherwise.
+     */
+    private void runNested(@NotNull Runnable action) {
+        int[] depth = INLINE_DEPTH.get();
+        if (depth[0] >= MAX_INLINE_DEPTH) {
+            submit();
+            return;
+        }
+        depth[0]++;
+        try {
+            action.run();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    /** Runs the action in the completing thread once this task is ready, or right away if it already is. */
+    void whenReady(@NotNull Runnable action) {
+        var continuation = new ActionContinuation(action);
+        if (!addContinuation(continuation)) {
+            continuation.fire(failure());
+        }
+    }
+
+    /**
+     * Pushes the continuation onto the stack of this task.
+     * @return false if the task has already been executed and the continuation was not added.
+     */
+    private boolean addContinuation(@NotNull Continuation continuation) {
+        Continuation head;
+        do {
+            head = continuations;
+            if (head == COMPLETED) {
+                return false;
+            }
+            continuation.next = head;
+        } while (!CONTINUATIONS.compareAndSet(this, head, continuation));
+        return true;
+    }
+
+    /** Fires the taken stack of continuations in the order they were added. */
+    private void fireContinuations(@Nullable Continuation head, @Nullable Exception failure) {
+        Continuation reversed = null;
+        int continuationAmount = 0;
+        while (head != null) {
+            Continuation next = head.next;
+            head.next = reversed;
+            reversed = head;
+            head = next;
+            continuationAmount++;
+        }
+        ThreadPoolStatistics statistics = pool.getStatistics();
+        if (statistics.isEnabled()) {
+            statistics.recordFanOut(continuationAmount);
+        }
+        while (reversed != null) {
+            Continuation next = reversed.next;
+            reversed.next = null;
+            reversed.fire(failure);
+            reversed = next;
+        }
+    }
+
+    /** Creates a task with the given action that is submitted once this task is ready. */
+    @NotNull private <R> ThreadPoolTask<R> then(@NotNull Callable<? extends R> action, int flags) {
+        var task = new ThreadPoolTask<R>(pool, action, flags);
+        task.setPriority(getPriority());
+        if (!addContinuation(task)) {
+            task.fire(failure());
+        }
+        return task;
+    }
+
+    /**
+     * Applies the given function to the result of the task.
+     * @param function a function to apply to the result of this task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task.
+     */
+    @Override
+    @NotNull public <R> LightFuture<R> thenApply(@NotNull Function<? super T, R> function) {
+        return then(() -> function.apply(resultNow()), PROPAGATING);
+    }
+
+    /**
+     * Applies the given function to the result of the task in the thread that completes it,
+     * or in the current thread if the task is already ready.
+     * @param function a cheap function to apply to the result of this task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task.
+     */
+    @Override
+    @NotNull public <R> LightFuture<R> thenApplyInline(@NotNull Function<? super T, R> function) {
+        return then(() -> function.apply(resultNow()), INLINE | PROPAGATING);
+    }
+
+    /**
+     * Applies the given function to the result of the task and waits for the future it returns.
+     * @param function a function that returns a new future for the result of this task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task completed with the outcome of the future returned by the function.
+     */
+    @Override
+    @NotNull public <R> LightFuture<R> thenCompose(
+            @NotNull Function<? super T, ? extends LightFuture<R>> function) {
+        var composed = new ThreadPoolTask<R>(pool, null);
+        then(() -> {
+            try {
+                composed.completeWith(function.apply(resultNow()));
+            } catch (Exception exception) {
+                composed.complete(null, exception);
+            }
+            return null;
+        }, 0);
+        return composed;
+    }
+
+    /**
+     * Applies the given function to the results of this and the other task once both are ready.
+     * @param other the other task.
+     * @param function a function to apply to the results of the tasks.
+     * @param <U> the type of the other task.
+     * @param <R> the type of the new task.
+     * @return a new LightFuture task.
+     */
+    @Override
+    @NotNull public <U, R> LightFuture<R> thenCombine(@NotNull LightFuture<? extends U> other,
+            @NotNull BiFunction<? super T, ? super U, ? extends R> function) {
+        ThreadPoolTask<? extends U> otherTask = pool.toTask(other);
+        var combined = new ThreadPoolTask<R>(pool, () -> function.apply(resultNow(), otherTask.resultNow()));
+        combined.setPriority(getPriority());
+        var pending = new AtomicInteger(2);
+        Runnable arrive = () -> {
+            if (pending.decrementAndGet() == 0) {
+                combined.submit();
+            }
+        };
+        whenReady(arrive);
+        otherTask.whenReady(arrive);
+        return combined;
+    }
+
+    /**
+     * Replaces the exception that occurred in the task with the result of the given function.
+     * @param function a function to apply to the exception of this task.
+     * @return a new LightFuture task with the result of this task or the function.
+     */
+    @Override
+    @NotNull public LightFuture<T> exceptionally(@NotNull Function<? super Exception, ? extends T> function) {
+        return then(() -> {
+            Exception failure = failure();
+            return failure == null ? value() : function.apply(failure);
+        }, 0);
+    }
+
+    /**
+     * Runs the given action with the result or the exception of the task once it is ready.
+     * @param action an action to run, one of its arguments is null.
+     * @return a new LightFuture task with the outcome of this task,
+     * or with the exception of the action if only the action failed.
+     */
+    @Override
+    @NotNull public LightFuture<T> whenComplete(@NotNull BiConsumer<? super T, ? super Exception> action) {
+        return then(() -> {
+            try {
+                action.accept(value(), failure());
+            } catch (Exception actionException) {
+                if (failure() == null) {
+                    throw actionException;
+                }
+            }
+            return resultNow();
+        }, 0);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Task executed at the given time, timers are ordered by their time and then by the order of addition. */
+class TimerEntry implements Comparable<TimerEntry> {
+    final @NotNull ThreadPoolTask<?> task;
+    final @NotNull ThreadPoolTask<?> future;
+    final long time;
+    long number;
+
+    /**
+     * Creates a timer of the task.
+     * @param future the task returned to the user that is cancelled with the timer, differs from the task
+     * for periodic tasks.
+     * @param time the value of System.nanoTime() at which the task is executed.
+     */
+    TimerEntry(@NotNull ThreadPoolTask<?> task, @NotNull ThreadPoolTask<?> future, long time) {
+        this.task = task;
+        this.future = future;
+        this.time = time;
+        task.scheduledTime = time; // the queue wait of the task is its lateness
+    }
+
+    @Override
+    public int compareTo(@NotNull TimerEntry other) {
+        if (time != other.time) {
+            return time - other.time < 0 ? -1 : 1;
+        }
+        return Long.compare(number, other.number);
+    }
+}
@@ -0,0 +1,153 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heap of timers of a ThreadPool guarded by a lock. Whether there are timers and the time of the earliest one
+ * are kept in volatile fields, so workers looking for tasks check them without taking the lock.
+ */
+class TimerHeap {
+    private final @NotNull PriorityQueue<TimerEntry> timers = new PriorityQueue<>();
+    private final @NotNull ReentrantLock lock = new ReentrantLock();
+    private long entryNumber = 0;
+    /** Amount of timers in the heap whose tasks were cancelled, the heap is purged when they are the majority. */
+    private int cancelledAmount = 0;
+    private volatile boolean hasTimers = false;
+    private volatile long nextTime = 0;
+
+    /** Returns true if there are timers in the heap. */
+    boolean hasTimers() {
+        return hasTimers;
+    }
+
+    /** Returns the value of System.nanoTime() at which the earliest timer is due, makes sense if there are timers. */
+    long nextTime() {
+        return nextTime;
+    }
+
+    /** Returns the amount of timers in the heap, including the cancelled ones that were not purged yet. */
+    int size() {
+        lock.lock();
+        try {
+            return timers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns true if the earliest timer is due. */
+    boolean hasDueTimer() {
+        return hasTimers && nextTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Puts the timer into the heap.
+     * @return true if the timer is the earliest one.
+     */
+    boolean add(@NotNull TimerEntry entry) {
+        lock.lock();
+        try {
+            entry.number = entryNumber++;
+            timers.add(entry);
+            if (timers.peek() != entry) {
+                return false;
+            }
+            nextTime = entry.time;
+            hasTimers = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the timer from the heap.
+     * @return false if the timer was not in the heap.
+     */
+    boolean remove(@NotNull TimerEntry entry) {
+        lock.lock();
+        try {
+            boolean wasRemoved = timers.remove(entry);
+            onEarliestChanged();
+            return wasRemoved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes the earliest timer if it is due. */
+    @Nullable TimerEntry pollDue() {
+        if (!hasDueTimer()) {
+            return null;
+        }
+        lock.lock();
+        try {
+            TimerEntry entry = timers.peek();
+            if (entry == null || entry.time - System.nanoTime() > 0) {
+                return null;
+            }
+            timers.poll();
+            if (entry.future.isReady() && cancelledAmount > 0) {
+                cancelledAmount--;
+            }
+            onEarliestChanged();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Counts a timer whose task was cancelled and purges the heap if such timers make up most of it. */
+    void onCancelled() {
+        lock.lock();
+        try {
+            cancelledAmount++;
+            if (2 * cancelledAmount > timers.size()) {
+                timers.removeIf(entry -> entry.future.isReady());
+                cancelledAmount = 0;
+                onEarliestChanged();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes timers from the heap.
+     * @param keepDue whether the timers that are already due stay in the heap.
+     * @return the removed timers.
+     */
+    @NotNull List<TimerEntry> removeAll(boolean keepDue) {
+        var entries = new ArrayList<TimerEntry>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            var dueEntries = new ArrayList<TimerEntry>();
+            for (var entry : timers) {
+                (keepDue && entry.time - now <= 0 ? dueEntries : entries).add(entry);
+            }
+            timers.clear();
+            timers.addAll(dueEntries);
+            cancelledAmount = 0;
+            onEarliestChanged();
+        } finally {
+            lock.unlock();
+        }
+        return entries;
+    }
+
+    /** Updates the fields read without the lock after the earliest timer was removed, is called under the lock. */
+    private void onEarliestChanged() {
+        TimerEntry nextEntry = timers.peek();
+        if (nextEntry != null) {
+            nextTime = nextEntry.time;
+        }
+        hasTimers = nextEntry != null;
+    }
+}
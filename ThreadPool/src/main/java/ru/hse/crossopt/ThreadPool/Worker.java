@@ -0,0 +1,183 @@
+package ru.hse.crossopt.ThreadPool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/** Thread of a ThreadPool that executes tasks and parks when there are none. */
+class Worker extends Thread {
+    private static final int NORMAL_PRIORITY_TURN = 8;
+    private static final int BACKGROUND_PRIORITY_TURN = 32;
+    static final @NotNull TaskPriority[] HIGH_PRIORITY_FIRST =
+            {TaskPriority.HIGH, TaskPriority.NORMAL, TaskPriority.BACKGROUND};
+    private static final @NotNull TaskPriority[] NORMAL_PRIORITY_FIRST =
+            {TaskPriority.NORMAL, TaskPriority.HIGH, TaskPriority.BACKGROUND};
+    private static final @NotNull TaskPriority[] BACKGROUND_PRIORITY_FIRST =
+            {TaskPriority.BACKGROUND, TaskPriority.HIGH, TaskPriority.NORMAL};
+
+    private final @NotNull ThreadPool pool;
+    final @NotNull Deque<ThreadPoolTask<?>> localTasks = new ConcurrentLinkedDeque<>();
+    /** The lane of keyed tasks executed only by this worker, core workers have one and never retire. */
+    @Nullable KeyLane keyLane;
+    /** Whether this worker was added to the elastic pool and has not looked for a task yet. */
+    boolean isStarting = false;
+    private int searchAmount = 0;
+
+    /** Creates a worker of the given pool, it starts executing tasks when started. */
+    Worker(@NotNull ThreadPool pool) {
+        this.pool = pool;
+    }
+
+    /** Executes tasks until the pool is shut down and no queued tasks are left, or until it is stopped. */
+    @Override
+    public void run() {
+        long idleSince = 0;
+        while (!pool.wasStopped) {
+            ThreadPoolTask<?> task = findTask();
+            if (isStarting) {
+                isStarting = false;
+                pool.startingWorkerAmount.decrementAndGet();
+                pool.requestGrowthCheck(); // the monitor waits until this worker takes a task to add the next one
+            }
+            if (task == null && pool.wasShutdown) {
+                task = findTask(); // a task could have been added right before the shutdown
+                if (task == null) {
+                    return;
+                }
+            }
+            if (task == null) {
+                if (keyLane == null && pool.keepAliveNanos == 0 && pool.tryRemoveWorker(this)) {
+                    return;
+                }
+                pool.idleWorkers.add(this);
+                task = findTask(); // a task could have been scheduled before this worker became visible as idle
+                if (task == null && !pool.wasShutdown) {
+                    if (keyLane == null && idleSince == 0) {
+                        idleSince = System.nanoTime();
+                    }
+                    park();
+                }
+                if (!pool.idleWorkers.remove(this) && task != null) {
+                    pool.wakeUpIdleWorker(); // the wake-up was meant for another task, passes it on
+                }
+                if (task == null && idleSince != 0 && System.nanoTime() - idleSince >= pool.keepAliveNanos
+                        && pool.tryRemoveWorker(this)) {
+                    return;
+                }
+            }
+            if (task != null) {
+                idleSince = 0;
+                if (pool.timers.hasTimers() && pool.timerWaiter.get() == null) {
+                    pool.wakeUpIdleWorker(); // some idle worker should wait for the next timer
+                }
+                pool.runTask(task);
+                Thread.interrupted(); // a flag left by the task would make park return at once
+            }
+        }
+    }
+
+    /**
+     * Waits until this worker is woken up. If no other worker waits for timers, this one waits
+     * until the earliest timer is due, a worker above the core amount waits for at most the keep-alive time.
+     */
+    private void park() {
+        boolean waitsForTimer = pool.timers.hasTimers() && pool.timerWaiter.compareAndSet(null, this);
+        long timeout = waitsForTimer ? Math.max(pool.timers.nextTime() - System.nanoTime(), 0) : Long.MAX_VALUE;
+        if (keyLane == null) {
+            timeout = Math.min(timeout, pool.keepAliveNanos);
+        }
+        if (timeout == Long.MAX_VALUE) {
+            LockSupport.park(this);
+        } else {
+            LockSupport.parkNanos(this, timeout);
+        }
+        if (waitsForTimer) {
+            pool.timerWaiter.set(null);
+        }
+    }
+
+    /**
+     * Takes a task of a due timer, then a task with the earliest deadline, then a keyed task of this worker,
+     * which nobody else can take, then a task of high priority,
+     * then a task of normal priority from the own deque, the shared queue or other workers,
+     * then a task of background priority.
+     * Every few searches start from normal priority and more rarely from background one,
+     * so that these tasks are taken even when tasks of higher priorities keep coming.
+     */
+    private @Nullable ThreadPoolTask<?> findTask() {
+        ThreadPoolTask<?> task = pool.pollDueTimer();
+        if (task == null && !pool.deadlineQueue.isEmpty()) {
+            task = pool.pollDeadlineTask();
+        }
+        if (task == null && keyLane != null) {
+            task = keyLane.tasks.poll();
+        }
+        if (task != null) {
+            return task;
+        }
+        searchAmount++;
+        TaskPriority[] order = searchAmount % BACKGROUND_PRIORITY_TURN == 0 ? BACKGROUND_PRIORITY_FIRST
+                : searchAmount % NORMAL_PRIORITY_TURN == 0 ? NORMAL_PRIORITY_FIRST : HIGH_PRIORITY_FIRST;
+        for (var priority : order) {
+            if (priority == TaskPriority.NORMAL) {
+                task = localTasks.pollLast();
+            }
+            if (task == null) {
+                task = pollSharedQueue(pool.queueOf(priority));
+            }
+            if (task == null && priority == TaskPriority.NORMAL
+                    && pool.schedulingMode == SchedulingMode.WORK_STEALING) {
+                task = steal();
+            }
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes a task from the given shared queue. If more tasks are left, wakes up another idle worker,
+     * so that a wake-up consumed by a worker that found a task on its own is not lost,
+     * or checks if the elastic pool should grow.
+     */
+    private @Nullable ThreadPoolTask<?> pollSharedQueue(@NotNull Queue<ThreadPoolTask<?>> queue) {
+        ThreadPoolTask<?> task = queue.poll();
+        if (task != null) {
+            pool.releaseQueueSlot(task);
+            if (!queue.isEmpty()) {
+                pool.wakeUpIdleWorker();
+            }
+        }
+        return task;
+    }
+
+    /** Takes the oldest task from the deque of some other worker, starting from a random one. */
+    private @Nullable ThreadPoolTask<?> steal() {
+        Worker[] workers = pool.threads;
+        int start = ThreadLocalRandom.current().nextInt(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            Worker victim = workers[(start + i) % workers.length];
+            if (victim != this) {
+                ThreadPoolTask<?> task = victim.localTasks.pollFirst();
+                if (task != null) {
+                    if (pool.getStatistics().isEnabled()) {
+                        pool.getStatistics().recordSteal();
+                    }
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the pool of this worker. */
+    @NotNull ThreadPool getPool() {
+        return pool;
+    }
+}
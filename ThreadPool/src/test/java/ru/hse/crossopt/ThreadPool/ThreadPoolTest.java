@@ -2,7 +2,25 @@ package ru.hse.crossopt.ThreadPool;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -173,6 +191,20 @@ class ThreadPoolTest {
         assertTrue(10 <= threadsAlive);
     }
 
+    @Test
+    void testIdleThreadsDoNotSpin() throws NoSuchFieldException, IllegalAccessException, LightExecutionException,
+            InterruptedException {
+        var pool = new ThreadPool(4);
+        assertEquals("done", pool.add(() -> "done").get());
+        Thread.sleep(500);
+        var threads = pool.getClass().getDeclaredField("threads");
+        threads.setAccessible(true);
+        for (var thread : (Thread[]) threads.get(pool)) {
+            assertEquals(Thread.State.WAITING, thread.getState());
+        }
+        pool.shutdown();
+    }
+
     @Test
     void testShutdownOneThreadDoesEndTasks() throws NoSuchFieldException, IllegalAccessException, InterruptedException {
         var pool = new ThreadPool(1);
@@ -285,6 +317,96 @@ class ThreadPoolTest {
         }
     }
 
+    @Test
+    void testWorkStealingSimpleTasks() throws LightExecutionException {
+        var pool = new ThreadPool(4, SchedulingMode.WORK_STEALING);
+        LightFuture<Integer> sumTask = pool.add(() -> 1 + 1);
+        LightFuture<String> stringTask = sumTask.thenApply(Object::toString);
+        assertEquals(Integer.valueOf(2), sumTask.get());
+        assertEquals("2", stringTask.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWorkStealingTasksSubmittedFromWorker() throws LightExecutionException {
+        var pool = new ThreadPool(4, SchedulingMode.WORK_STEALING);
+        LightFuture<LightFuture<Integer>[]> outerTask = pool.add(() -> {
+            LightFuture<Integer>[] innerTasks = new LightFuture[100];
+            for (int i = 0; i < 100; i++) {
+                final int ii = i;
+                innerTasks[i] = pool.add(() -> ii * ii);
+            }
+            return innerTasks;
+        });
+        LightFuture<Integer>[] innerTasks = outerTask.get();
+        assertNotNull(innerTasks);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i * i), innerTasks[i].get());
+        }
+    }
+
+    @Test
+    void testWorkStealingIdleThreadStealsLocalTask() throws LightExecutionException {
+        var pool = new ThreadPool(2, SchedulingMode.WORK_STEALING);
+        LightFuture<String> outerTask = pool.add(() -> {
+            LightFuture<String> innerTask = pool.add(() -> "stolen");
+            try {
+                return innerTask.get(); // only the other thread can run the inner task
+            } catch (LightExecutionException exception) {
+                throw new RuntimeException(exception);
+            }
+        });
+        assertEquals("stolen", outerTask.get());
+    }
+
+    @Test
+    void testEveryAddedTaskWakesUpIdleThread() throws LightExecutionException, InterruptedException {
+        for (var mode : SchedulingMode.values()) {
+            var pool = new ThreadPool(2, mode);
+            for (int i = 0; i < 2000; i++) { // tasks are added while threads of the previous round become idle
+                var started = new CountDownLatch(2);
+                Supplier<Boolean> task = () -> {
+                    started.countDown();
+                    try {
+                        return started.await(5, TimeUnit.SECONDS); // the other task needs the other thread
+                    } catch (InterruptedException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                };
+                LightFuture<Boolean> firstTask = pool.add(task);
+                LightFuture<Boolean> secondTask = pool.add(task);
+                assertTrue(firstTask.get());
+                assertTrue(secondTask.get());
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testThenApplyConcurrentlyWithExecution() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(4);
+        LightFuture<Integer> task = pool.add(() -> 1);
+        LightFuture<Integer>[] dependentTasks = new LightFuture[1000];
+        var appliers = new Thread[4];
+        for (int i = 0; i < appliers.length; i++) {
+            final int offset = i;
+            appliers[i] = new Thread(() -> {
+                for (int j = offset; j < dependentTasks.length; j += appliers.length) {
+                    final int jj = j;
+                    dependentTasks[j] = task.thenApply(x -> x + jj);
+                }
+            });
+            appliers[i].start();
+        }
+        for (var applier : appliers) {
+            applier.join();
+        }
+        for (int i = 0; i < dependentTasks.length; i++) {
+            assertEquals(Integer.valueOf(i + 1), dependentTasks[i].get());
+        }
+    }
+
     @Test
     void testOneThreadSupplierWithDifferingValues() throws LightExecutionException {
         var random = new Random(179);
@@ -406,4 +528,1194 @@ class ThreadPoolTest {
         assertEquals("1", secondTask.get());
         assertEquals("0", thirdTask.get());
     }
+
+    @Test
+    void testThenCompose() throws LightExecutionException {
+        var pool = new ThreadPool(2);
+        LightFuture<Integer> task = pool.add(() -> 3);
+        LightFuture<String> composedTask = task.thenCompose(x -> pool.add(() -> "x" + x));
+        assertEquals("x3", composedTask.get());
+    }
+
+    @Test
+    void testThenComposeFailedFunction() {
+        var pool = new ThreadPool(2);
+        LightFuture<Integer> task = pool.add(() -> 3);
+        LightFuture<String> composedTask = task.thenCompose(x -> {
+            throw new IllegalStateException();
+        });
+        var exception = assertThrows(LightExecutionException.class, composedTask::get);
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testThenCombine() throws LightExecutionException {
+        var pool = new ThreadPool(2);
+        LightFuture<Integer> firstTask = pool.add(() -> 6);
+        LightFuture<String> secondTask = pool.add(() -> "*7");
+        LightFuture<String> combinedTask = firstTask.thenCombine(secondTask, (x, y) -> x + y);
+        assertEquals("6*7", combinedTask.get());
+    }
+
+    @Test
+    void testThenCombineFailedTask() {
+        var pool = new ThreadPool(2);
+        LightFuture<Integer> firstTask = pool.add(() -> 6);
+        LightFuture<String> badTask = pool.add(() -> {
+            throw new IllegalStateException();
+        });
+        LightFuture<String> combinedTask = firstTask.thenCombine(badTask, (x, y) -> x + y);
+        var exception = assertThrows(LightExecutionException.class, combinedTask::get);
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testExceptionally() throws LightExecutionException {
+        var pool = new ThreadPool(1);
+        LightFuture<String> badTask = pool.add(() -> {
+            throw new IllegalStateException();
+        });
+        LightFuture<String> goodTask = pool.add(() -> "good");
+        assertEquals("IllegalStateException",
+                badTask.exceptionally(exception -> exception.getClass().getSimpleName()).get());
+        assertEquals("good", goodTask.exceptionally(exception -> "bad").get());
+    }
+
+    @Test
+    void testWhenComplete() throws LightExecutionException {
+        var pool = new ThreadPool(1);
+        var results = new ArrayList<Object>();
+        LightFuture<String> goodTask = pool.add(() -> "good");
+        LightFuture<String> badTask = pool.add(() -> {
+            throw new IllegalStateException();
+        });
+        assertEquals("good", goodTask.whenComplete((result, exception) -> results.add(result)).get());
+        LightFuture<String> afterBadTask = badTask.whenComplete((result, exception) -> results.add(exception));
+        assertThrows(LightExecutionException.class, afterBadTask::get);
+        assertEquals(2, results.size());
+        assertEquals("good", results.get(0));
+        assertTrue(results.get(1) instanceof IllegalStateException);
+    }
+
+    @Test
+    void testDefaultMethodsOfLightFuture() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        var firstTask = new DelegatingFuture<>(pool.add(() -> 6));
+        var secondTask = new DelegatingFuture<>(pool.add(() -> "*7"));
+        assertEquals("6*7", firstTask.thenCombine(secondTask, (x, y) -> x + y).get());
+        assertEquals(Integer.valueOf(7), firstTask.thenApplyInline(x -> x + 1).get());
+        assertFalse(firstTask.cancel());
+        pool.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAllOfFanOutFanInOneThread() throws LightExecutionException {
+        var pool = new ThreadPool(1);
+        LightFuture<Integer>[] tasks = new LightFuture[5000];
+        for (int i = 0; i < tasks.length; i++) {
+            final int ii = i;
+            tasks[i] = pool.add(() -> ii).thenCompose(x -> pool.add(() -> x * 2));
+        }
+        LightFuture<Integer> sumTask = pool.allOf(tasks).thenApply(ignored -> {
+            int sum = 0;
+            for (var task : tasks) {
+                try {
+                    sum += task.get();
+                } catch (LightExecutionException exception) {
+                    throw new RuntimeException(exception);
+                }
+            }
+            return sum;
+        });
+        assertEquals(Integer.valueOf(tasks.length * (tasks.length - 1)), sumTask.get());
+        assertNull(pool.allOf().get());
+    }
+
+    @Test
+    void testAllOfFailedTask() {
+        var pool = new ThreadPool(2);
+        LightFuture<String> badTask = pool.add(() -> {
+            throw new IllegalStateException();
+        });
+        LightFuture<Void> allTask = pool.allOf(pool.add(() -> 1), badTask);
+        assertThrows(LightExecutionException.class, allTask::get);
+    }
+
+    @Test
+    void testAnyOf() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        var release = new CountDownLatch(1);
+        LightFuture<String> slowTask = pool.add(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            return "slow";
+        });
+        try {
+            LightFuture<String> fastTask = pool.add(() -> "fast");
+            assertEquals("fast", pool.anyOf(slowTask, fastTask).get());
+        } finally { // the slow task must not outlive the test even if it fails
+            release.countDown();
+        }
+        assertEquals("slow", slowTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testThenApplyInlineRunsInCompletingThread() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(4);
+        var latch = new CountDownLatch(1);
+        LightFuture<Thread> task = pool.add(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            return Thread.currentThread();
+        });
+        LightFuture<Boolean> sameThreadTask = task.thenApplyInline(thread -> thread == Thread.currentThread());
+        latch.countDown();
+        assertEquals(Boolean.TRUE, sameThreadTask.get());
+        LightFuture<Thread> readyTask = task.thenApplyInline(thread -> Thread.currentThread());
+        assertTrue(readyTask.isReady());
+        assertSame(Thread.currentThread(), readyTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testThenApplyInlineLongChain() throws LightExecutionException {
+        var pool = new ThreadPool(2);
+        var latch = new CountDownLatch(1);
+        LightFuture<Integer> task = pool.add(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            return 0;
+        });
+        for (int i = 0; i < 10000; i++) {
+            task = task.thenApplyInline(x -> x + 1);
+        }
+        latch.countDown();
+        assertEquals(Integer.valueOf(10000), task.get());
+    }
+
+    @Test
+    void testThenApplyInlineFailedTask() {
+        var pool = new ThreadPool(1);
+        LightFuture<String> badTask = pool.add(() -> {
+            throw new IllegalStateException();
+        });
+        LightFuture<String> secondBadTask = badTask.thenApplyInline(x -> x + "!");
+        var exception = assertThrows(LightExecutionException.class, secondBadTask::get);
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+    }
+
+    /** Occupies the only thread of the pool until the returned latch is released. */
+    /** Future that implements only the methods of LightFuture without default implementations. */
+    private static class DelegatingFuture<T> implements LightFuture<T> {
+        private final LightFuture<T> task;
+
+        private DelegatingFuture(LightFuture<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean isReady() {
+            return task.isReady();
+        }
+
+        @Override
+        public T get() throws LightExecutionException {
+            return task.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws LightExecutionException, TimeoutException {
+            return task.get(timeout, unit);
+        }
+
+        @Override
+        public <R> LightFuture<R> thenApply(Function<? super T, R> function) {
+            return task.thenApply(function);
+        }
+
+        @Override
+        public <R> LightFuture<R> thenCompose(Function<? super T, ? extends LightFuture<R>> function) {
+            return task.thenCompose(function);
+        }
+
+        @Override
+        public LightFuture<T> exceptionally(Function<? super Exception, ? extends T> function) {
+            return task.exceptionally(function);
+        }
+
+        @Override
+        public LightFuture<T> whenComplete(BiConsumer<? super T, ? super Exception> action) {
+            return task.whenComplete(action);
+        }
+    }
+
+    private static CountDownLatch occupyThread(ThreadPool pool) throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        pool.add(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            return null;
+        });
+        started.await();
+        return release;
+    }
+
+    @Test
+    void testBadCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(1, 0, RejectionPolicy.THROW));
+    }
+
+    @Test
+    void testBoundedQueueThrow() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 2, RejectionPolicy.THROW);
+        var release = occupyThread(pool);
+        LightFuture<Integer> firstTask = pool.add(() -> 1);
+        pool.add(() -> 2);
+        assertEquals(2, pool.getQueueSize());
+        assertThrows(RejectedExecutionException.class, () -> pool.add(() -> 3));
+        assertEquals(1, pool.getRejectedTaskAmount());
+        release.countDown();
+        assertEquals(Integer.valueOf(1), firstTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueCallerRuns() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 1, RejectionPolicy.CALLER_RUNS);
+        var release = occupyThread(pool);
+        pool.add(() -> null);
+        LightFuture<Thread> task = pool.add(Thread::currentThread);
+        assertTrue(task.isReady());
+        assertSame(Thread.currentThread(), task.get());
+        release.countDown();
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDropOldest() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 2, RejectionPolicy.DROP_OLDEST);
+        var release = occupyThread(pool);
+        LightFuture<Integer> firstTask = pool.add(() -> 1);
+        LightFuture<Integer> secondTask = pool.add(() -> 2);
+        LightFuture<Integer> thirdTask = pool.add(() -> 3);
+        var exception = assertThrows(LightExecutionException.class, firstTask::get);
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        assertEquals(2, pool.getQueueSize());
+        release.countDown();
+        assertEquals(Integer.valueOf(2), secondTask.get());
+        assertEquals(Integer.valueOf(3), thirdTask.get());
+        assertEquals(0, pool.getQueueSize());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDropOldestDeadlineTask() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 2, RejectionPolicy.DROP_OLDEST);
+        var release = occupyThread(pool);
+        LightFuture<Integer> firstTask = pool.add(() -> 1, 10, TimeUnit.SECONDS);
+        LightFuture<Integer> secondTask = pool.add(() -> 2, 20, TimeUnit.SECONDS);
+        LightFuture<Integer> thirdTask = pool.add(() -> 3, 5, TimeUnit.SECONDS);
+        var exception = assertThrows(LightExecutionException.class, firstTask::get);
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        release.countDown();
+        assertEquals(Integer.valueOf(2), secondTask.get());
+        assertEquals(Integer.valueOf(3), thirdTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDropOldestKeepsContinuations() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 1, RejectionPolicy.DROP_OLDEST);
+        var release = occupyThread(pool);
+        LightFuture<Integer> dependentTask = pool.allOf().thenApply(x -> 1); // is queued at once
+        var addedTask = new AtomicReference<LightFuture<Integer>>();
+        var producer = new Thread(() -> addedTask.set(pool.add(() -> 2)));
+        producer.start();
+        Thread.sleep(200);
+        assertEquals(Thread.State.WAITING, producer.getState());
+        release.countDown();
+        producer.join();
+        assertEquals(Integer.valueOf(1), dependentTask.get());
+        assertEquals(Integer.valueOf(2), addedTask.get().get());
+        assertEquals(0, pool.getRejectedTaskAmount());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueBlock() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 1, RejectionPolicy.BLOCK);
+        var release = occupyThread(pool);
+        pool.add(() -> 1);
+        var producer = new Thread(() -> pool.add(() -> 2));
+        producer.start();
+        Thread.sleep(200);
+        assertEquals(Thread.State.WAITING, producer.getState());
+        release.countDown();
+        producer.join();
+        assertEquals(Integer.valueOf(3), pool.add(() -> 3).get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDoesNotRejectContinuations() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 1, RejectionPolicy.THROW);
+        var release = occupyThread(pool);
+        LightFuture<Integer> task = pool.add(() -> 1);
+        LightFuture<Integer> firstDependentTask = task.thenApply(x -> x + 1);
+        LightFuture<Integer> secondDependentTask = task.thenApply(x -> x + 2);
+        release.countDown();
+        assertEquals(Integer.valueOf(2), firstDependentTask.get());
+        assertEquals(Integer.valueOf(3), secondDependentTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDoesNotRejectTasksAddedByPoolThreads()
+            throws InterruptedException, LightExecutionException, TimeoutException {
+        for (var mode : SchedulingMode.values()) {
+            for (var policy : List.of(RejectionPolicy.THROW, RejectionPolicy.BLOCK)) {
+                var pool = new ThreadPool(1, mode, 1, policy);
+                LightFuture<List<LightFuture<Integer>>> outerTask = pool.add(() -> List.of(
+                        pool.add(() -> 1, TaskPriority.HIGH), pool.add(() -> 2, TaskPriority.HIGH), pool.add(() -> 3)));
+                List<LightFuture<Integer>> innerTasks = outerTask.get(5, TimeUnit.SECONDS);
+                for (int i = 0; i < innerTasks.size(); i++) {
+                    assertEquals(Integer.valueOf(i + 1), innerTasks.get(i).get());
+                }
+                assertEquals(0, pool.getRejectedTaskAmount());
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testVirtualThreadPoolSimpleTasks() throws LightExecutionException, InterruptedException {
+        var pool = ThreadPool.newVirtualThreadPool();
+        LightFuture<Integer> task = pool.add(() -> 20);
+        assertEquals(Integer.valueOf(42), task.thenApply(x -> x * 2 + 2).get());
+        pool.shutdown();
+        assertThrows(IllegalStateException.class, () -> pool.add(() -> 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testVirtualThreadPoolBlockingTasksDoNotWaitForEachOther() throws LightExecutionException {
+        var pool = ThreadPool.newVirtualThreadPool();
+        var allStarted = new CountDownLatch(200);
+        LightFuture<Boolean>[] tasks = new LightFuture[200];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = pool.add(() -> {
+                allStarted.countDown();
+                try {
+                    return allStarted.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+            });
+        }
+        for (var task : tasks) {
+            assertEquals(Boolean.TRUE, task.get());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testShutdownDrainsQueuedTasks() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightFuture<Integer>[] tasks = new LightFuture[10];
+        for (int i = 0; i < tasks.length; i++) {
+            final int ii = i;
+            tasks[i] = pool.add(() -> ii).thenApply(x -> x * 2);
+        }
+        var shutdownThread = new Thread(() -> {
+            try {
+                pool.shutdown();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+        });
+        shutdownThread.start();
+        while (!pool.isShutdown()) {
+            Thread.yield();
+        }
+        assertThrows(IllegalStateException.class, () -> pool.add(() -> -1));
+        release.countDown();
+        shutdownThread.join();
+        for (int i = 0; i < tasks.length; i++) {
+            assertTrue(tasks[i].isReady());
+            assertEquals(Integer.valueOf(2 * i), tasks[i].get());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testShutdownNowCancelsQueuedTasks() throws InterruptedException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightFuture<Integer>[] tasks = new LightFuture[10];
+        for (int i = 0; i < tasks.length; i++) {
+            final int ii = i;
+            tasks[i] = pool.add(() -> ii);
+        }
+        List<LightFuture<?>> unstartedTasks = pool.shutdownNow();
+        assertEquals(tasks.length, unstartedTasks.size());
+        for (var task : tasks) {
+            var exception = assertThrows(LightExecutionException.class, task::get);
+            assertTrue(exception.getCause() instanceof CancellationException);
+        }
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> pool.add(() -> -1));
+        release.countDown();
+    }
+
+    @Test
+    void testAwaitTerminationTimesOut() throws InterruptedException {
+        var pool = new ThreadPool(1);
+        var started = new CountDownLatch(1);
+        var release = new Semaphore(0);
+        pool.add(() -> {
+            started.countDown();
+            release.acquireUninterruptibly(); // ignores the interruption by shutdownNow without spinning
+            return null;
+        });
+        started.await();
+        try {
+            assertTrue(pool.shutdownNow().isEmpty());
+            assertFalse(pool.awaitTermination(200, TimeUnit.MILLISECONDS));
+        } finally {
+            release.release();
+        }
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCancel() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightFuture<Integer> task = pool.add(() -> 1);
+        LightFuture<Integer> dependentTask = task.thenApply(x -> x + 1);
+        assertTrue(task.cancel());
+        assertFalse(task.cancel());
+        var exception = assertThrows(LightExecutionException.class, task::get);
+        assertTrue(exception.getCause() instanceof CancellationException);
+        release.countDown();
+        assertThrows(LightExecutionException.class, dependentTask::get);
+        LightFuture<Integer> nextTask = pool.add(() -> 2);
+        assertEquals(Integer.valueOf(2), nextTask.get());
+        assertFalse(nextTask.cancel());
+        pool.shutdown();
+    }
+
+    @Test
+    void testCancelFreesQueuePlace() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 2, RejectionPolicy.BLOCK);
+        var release = occupyThread(pool);
+        LightFuture<Integer> firstTask = pool.add(() -> 1);
+        LightFuture<Integer> secondTask = pool.add(() -> 2, 1, TimeUnit.HOURS);
+        var addedTask = new AtomicReference<LightFuture<Integer>>();
+        var producer = new Thread(() -> addedTask.set(pool.add(() -> 3)));
+        producer.start();
+        try {
+            assertTrue(firstTask.cancel());
+            producer.join(TimeUnit.SECONDS.toMillis(5)); // the cancelled task has let the producer in
+            assertFalse(producer.isAlive());
+            assertEquals(2, pool.getQueueSize());
+            assertTrue(secondTask.cancel());
+            assertEquals(1, pool.getQueueSize());
+        } finally {
+            release.countDown();
+        }
+        producer.join();
+        assertEquals(Integer.valueOf(3), addedTask.get().get());
+        assertEquals(0, pool.getQueueSize()); // taking the cancelled tasks did not free their places again
+        pool.shutdown();
+    }
+
+    @Test
+    void testTimedGet()throws InterruptedException, LightExecutionException, TimeoutException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightFuture<Integer> task = pool.add(() -> 1);
+        assertThrows(TimeoutException.class, () -> task.get(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertEquals(Integer.valueOf(1), task.get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), task.get(0, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    void testGetRacesWithCompletion() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(2);
+        for (int i = 0; i < 2000; i++) { // waiters register while the task is being completed
+            int value = i;
+            LightFuture<Integer> task = pool.add(() -> value);
+            LightFuture<Integer> waiter = pool.add(() -> {
+                try {
+                    return task.get(5, TimeUnit.SECONDS);
+                } catch (LightExecutionException | TimeoutException exception) {
+                    throw new RuntimeException(exception);
+                }
+            });
+            assertEquals(Integer.valueOf(value), task.get());
+            assertEquals(Integer.valueOf(value), waiter.get());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void testDeadlineTasksEarliestFirst() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        var order = new ArrayList<String>();
+        pool.add(() -> order.add("none"));
+        pool.add(() -> order.add("3s"), 3, TimeUnit.SECONDS);
+        pool.add(() -> order.add("1s"), 1, TimeUnit.SECONDS);
+        LightFuture<Boolean> lastTask = pool.add(() -> order.add("2s"), 2, TimeUnit.SECONDS);
+        release.countDown();
+        lastTask.get();
+        pool.shutdown();
+        assertEquals(List.of("1s", "2s", "3s", "none"), order);
+    }
+
+    @Test
+    void testDeadlinePassedTaskIsDropped() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        var executed = new AtomicBoolean(false);
+        LightFuture<Boolean> lateTask = pool.add(() -> executed.getAndSet(true), 50, TimeUnit.MILLISECONDS);
+        LightFuture<Integer> timelyTask = pool.add(() -> 1, 1, TimeUnit.MINUTES);
+        Thread.sleep(200);
+        release.countDown();
+        var exception = assertThrows(LightExecutionException.class, lateTask::get);
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        assertEquals(Integer.valueOf(1), timelyTask.get());
+        assertFalse(executed.get());
+        assertEquals(0, pool.getQueueSize());
+        pool.shutdown();
+    }
+
+    @Test
+    void testStatisticsDisabledByDefault() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        pool.add(() -> 1).thenApply(x -> x + 1).get();
+        ThreadPoolStatistics statistics = pool.getStatistics();
+        assertFalse(statistics.isEnabled());
+        assertEquals(0, statistics.getExecutedTaskAmount());
+        assertEquals(0, statistics.getExecutionTime().getCount());
+        pool.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStatisticsCountTasksAndFanOut() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        ThreadPoolStatistics statistics = pool.getStatistics();
+        statistics.setEnabled(true);
+        var release = new CountDownLatch(1);
+        LightFuture<Integer> task = pool.add(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            return 1;
+        });
+        LightFuture<Integer>[] dependentTasks = new LightFuture[3];
+        for (int i = 0; i < dependentTasks.length; i++) {
+            dependentTasks[i] = task.thenApply(x -> x + 1);
+        }
+        release.countDown();
+        for (var dependentTask : dependentTasks) {
+            dependentTask.get();
+        }
+        pool.shutdown();
+        assertEquals(4, statistics.getExecutedTaskAmount());
+        assertEquals(4, statistics.getExecutionTime().getCount());
+        assertEquals(4, statistics.getQueueWaitTime().getCount());
+        assertEquals(3, statistics.getContinuationFanOut().getMax());
+        assertEquals(2, statistics.getThreadAmount());
+        assertEquals(0, statistics.getQueueSize());
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        var histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.getMax());
+        assertEquals(1, histogram.getPercentile(0));
+        for (int percentile : new int[] {1, 25, 50, 75, 90, 99}) {
+            long exact = percentile; // the values are 1..100, so the exact percentile equals its rank
+            long bound = histogram.getPercentile(percentile);
+            // buckets are of power of two width: the bound is off by less than the exact value itself
+            assertTrue(exact <= bound && bound < 2 * exact, percentile + "th percentile bound " + bound);
+            assertTrue(bound <= histogram.getMax());
+        }
+        assertEquals(100, histogram.getPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+    }
+
+    @Test
+    void testHistogramExtremeValues() {
+        var histogram = new Histogram();
+        histogram.record(-1);
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    void testElasticPoolGrowsAndShrinks() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 4, 200, 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, pool.getThreadAmount());
+        var started = new CountDownLatch(4);
+        var release = new CountDownLatch(1);
+        var tasks = new LightFuture<?>[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = pool.add(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+                return null;
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(4, pool.getThreadAmount());
+        release.countDown();
+        pool.allOf(tasks).get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getThreadAmount() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, pool.getThreadAmount());
+        assertEquals(4, pool.getPeakThreadAmount());
+        assertEquals(Integer.valueOf(2), pool.add(() -> 2).get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testElasticPoolGrowsWhileAllThreadsBlock() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 4, 1, 20, TimeUnit.MILLISECONDS);
+        var started = new CountDownLatch(4);
+        var tasks = new LightFuture<?>[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = pool.add(() -> {
+                started.countDown();
+                try {
+                    started.await(5, TimeUnit.SECONDS); // no task finishes before all of them have started
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+                return null;
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.allOf(tasks).get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getThreadAmount() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.getThreadAmount());
+        LightFuture<Integer> outerTask = pool.add(() -> {
+            try {
+                return pool.add(() -> 1).get(5, TimeUnit.SECONDS) + 1; // the only thread waits for the queued task
+            } catch (LightExecutionException | TimeoutException exception) {
+                throw new RuntimeException(exception);
+            }
+        });
+        assertEquals(Integer.valueOf(2), outerTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testElasticPoolGrowsForTasksOfAllQueues() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1, 4, 1, 20, TimeUnit.MILLISECONDS);
+        var started = new CountDownLatch(4);
+        Supplier<Boolean> task = () -> {
+            started.countDown();
+            try {
+                return started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+        };
+        LightFuture<Boolean> firstTask = pool.add(task, 1, TimeUnit.MINUTES);
+        LightFuture<Boolean> secondTask = pool.add(task, 1, TimeUnit.MINUTES);
+        LightFuture<Boolean> thirdTask = pool.add(task, TaskPriority.BACKGROUND);
+        LightFuture<Boolean> fourthTask = pool.add(task, TaskPriority.BACKGROUND);
+        assertTrue(firstTask.get());
+        assertTrue(secondTask.get());
+        assertTrue(thirdTask.get());
+        assertTrue(fourthTask.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testElasticPoolWithoutKeepAliveTime() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(2, 4, 0, 0, TimeUnit.MILLISECONDS);
+        var started = new CountDownLatch(4);
+        var tasks = new LightFuture<?>[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = pool.add(() -> {
+                started.countDown();
+                try {
+                    started.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+                return null;
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.allOf(tasks).get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((pool.getThreadAmount() > 2 || pool.getIdleThreadAmount() < 2) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.getThreadAmount());
+        for (int i = 0; i < 1000; i++) { // core threads stay parked instead of waking up in a loop
+            assertEquals(2, pool.getIdleThreadAmount());
+            Thread.yield();
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void testElasticPoolInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(2, 1, 1, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(0, 1, 1, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(1, 2, -1, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAddAll() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(4);
+        var suppliers = new ArrayList<Supplier<Integer>>();
+        for (int i = 0; i < 10000; i++) {
+            int value = i;
+            suppliers.add(() -> value * 2);
+        }
+        LightBatchFuture<Integer> batch = pool.addAll(suppliers);
+        List<Integer> results = batch.get();
+        assertEquals(10000, batch.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.valueOf(i * 2), results.get(i));
+        }
+        assertEquals(Integer.valueOf(10), batch.getItem(5).get());
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getItem(10000));
+        assertTrue(pool.addAll(new ArrayList<Supplier<Integer>>()).get().isEmpty());
+        pool.shutdown();
+    }
+
+    @Test
+    void testAddAllItemFutureBeforeExecution() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightBatchFuture<String> batch = pool.addAll(List.of(() -> "a", () -> "b", () -> "c"));
+        LightFuture<String> item = batch.getItem(1);
+        LightFuture<String> dependentTask = item.thenApply(x -> x + "!");
+        assertFalse(item.isReady());
+        assertSame(item, batch.getItem(1));
+        release.countDown();
+        assertEquals("b!", dependentTask.get());
+        assertEquals(List.of("a", "b", "c"), batch.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testAddAllFailure() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        var exception = new IllegalStateException("failure");
+        LightBatchFuture<Integer> batch = pool.addAll(List.of(() -> 1, () -> {
+            throw exception;
+        }, () -> 3));
+        assertSame(exception, assertThrows(LightExecutionException.class, batch::get).getCause());
+        assertSame(exception, assertThrows(LightExecutionException.class, () -> batch.getItem(1).get()).getCause());
+        assertEquals(Integer.valueOf(3), batch.getItem(2).get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testAddAllCancel() throws InterruptedException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightBatchFuture<Integer> batch = pool.addAll(List.of(() -> 1, () -> 2));
+        assertTrue(batch.cancel());
+        release.countDown();
+        var exception = assertThrows(LightExecutionException.class, () -> batch.getItem(0).get());
+        assertTrue(exception.getCause() instanceof CancellationException);
+        assertThrows(LightExecutionException.class, batch::get);
+        assertFalse(batch.cancel());
+        pool.shutdown();
+    }
+
+    @Test
+    void testAddAllToFullQueue() throws InterruptedException, LightExecutionException {
+        for (var policy : List.of(RejectionPolicy.BLOCK, RejectionPolicy.CALLER_RUNS, RejectionPolicy.DROP_OLDEST)) {
+            var pool = new ThreadPool(4, 2, policy);
+            var suppliers = new ArrayList<Supplier<Integer>>();
+            for (int i = 0; i < 1000; i++) {
+                int value = i;
+                suppliers.add(() -> value);
+            }
+            for (int i = 0; i < 20; i++) {
+                List<Integer> results = pool.addAll(suppliers).get();
+                for (int j = 0; j < results.size(); j++) {
+                    assertEquals(Integer.valueOf(j), results.get(j));
+                }
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testHighPriorityTaskIsTakenFirst() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        var order = new ArrayList<String>();
+        pool.add(() -> order.add("background"), TaskPriority.BACKGROUND);
+        pool.add(() -> order.add("normal"));
+        LightFuture<Boolean> highTask = pool.add(() -> order.add("high"), TaskPriority.HIGH);
+        LightFuture<Boolean> dependentTask = highTask.thenApply(x -> order.add("high continuation"));
+        release.countDown();
+        dependentTask.get();
+        pool.shutdown();
+        assertEquals(List.of("high", "high continuation", "normal", "background"), order);
+    }
+
+    @Test
+    void testBackgroundTaskIsNotStarved() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        var order = new ArrayList<String>();
+        LightFuture<Boolean> backgroundTask = pool.add(() -> order.add("background"), TaskPriority.BACKGROUND);
+        for (int i = 0; i < 100; i++) {
+            pool.add(() -> order.add("high"), TaskPriority.HIGH);
+        }
+        release.countDown();
+        backgroundTask.get();
+        pool.shutdown();
+        assertTrue(order.indexOf("background") < 100);
+    }
+
+    @Test
+    void testParallelFor() throws LightExecutionException, InterruptedException {
+        for (var mode : SchedulingMode.values()) {
+            var pool = new ThreadPool(4, mode);
+            var counters = new AtomicIntegerArray(100000);
+            pool.parallelFor(0, counters.length(), counters::incrementAndGet).get();
+            for (int i = 0; i < counters.length(); i++) {
+                assertEquals(1, counters.get(i));
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelReduce() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(4, SchedulingMode.WORK_STEALING);
+        assertEquals(Long.valueOf(999999L * 1000000 / 2),
+                pool.parallelReduce(0, 1000000, 0L, i -> (long) i, Long::sum).get());
+        var expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            expected.append(i % 10);
+        }
+        assertEquals(expected.toString(),
+                pool.parallelReduce(0, 2000, "", i -> String.valueOf(i % 10), String::concat).get());
+        assertEquals("empty", pool.parallelReduce(5, 5, "empty", String::valueOf, String::concat).get());
+        assertThrows(IllegalArgumentException.class, () -> pool.parallelFor(1, 0, i -> {}));
+        pool.shutdown();
+    }
+
+    @Test
+    void testParallelForFailure() throws InterruptedException {
+        var pool = new ThreadPool(4);
+        var exception = new IllegalStateException("failure");
+        LightFuture<Void> task = pool.parallelFor(0, 100000, i -> {
+            if (i == 777) {
+                throw exception;
+            }
+        });
+        assertSame(exception, assertThrows(LightExecutionException.class, task::get).getCause());
+        pool.shutdown();
+    }
+
+    @Test
+    void testFailurePropagatesWithoutExecutingChain() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        pool.getStatistics().setEnabled(true);
+        var exception = new IllegalStateException("failure");
+        var release = new CountDownLatch(1);
+        LightFuture<Integer> task = pool.add(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                throw new RuntimeException(interruptedException);
+            }
+            throw exception;
+        });
+        for (int i = 0; i < 100; i++) {
+            task = task.thenApply(x -> x + 1);
+        }
+        release.countDown();
+        assertSame(exception, assertThrows(LightExecutionException.class, task::get).getCause());
+        pool.shutdown();
+        assertEquals(1, pool.getStatistics().getExecutedTaskAmount());
+    }
+
+    @Test
+    void testLongFailingChain() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        var exception = new IllegalStateException("failure");
+        var release = new CountDownLatch(1);
+        LightFuture<Integer> task = pool.add(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                throw new RuntimeException(interruptedException);
+            }
+            throw exception;
+        });
+        for (int i = 0; i < 10000; i++) {
+            task = i % 2 == 0 ? task.thenApply(x -> x + 1) : task.thenApplyInline(x -> x + 1);
+        }
+        release.countDown();
+        assertSame(exception, assertThrows(LightExecutionException.class, task::get).getCause());
+        pool.shutdown();
+    }
+
+    @Test
+    void testSchedule() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        long start = System.nanoTime();
+        LightFuture<Long> task = pool.schedule(System::nanoTime, 100, TimeUnit.MILLISECONDS);
+        assertTrue(task.get() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        pool.shutdown();
+    }
+
+    @Test
+    void testScheduledTasksRunInTimeOrder() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(1);
+        var order = new ArrayList<Integer>();
+        var tasks = new ArrayList<LightFuture<Boolean>>();
+        for (int i = 9; i >= 0; i--) {
+            int number = i;
+            tasks.add(pool.schedule(() -> order.add(number), 20 * i, TimeUnit.MILLISECONDS));
+        }
+        for (var task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+    }
+
+    @Test
+    void testScheduleAtFixedRate() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        var executions = new CountDownLatch(5);
+        var executionAmount = new AtomicInteger();
+        LightFuture<Void> task = pool.scheduleAtFixedRate(() -> {
+            executionAmount.incrementAndGet();
+            executions.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(executions.await(30, TimeUnit.SECONDS));
+        assertTrue(task.cancel());
+        int amount = executionAmount.get();
+        Thread.sleep(100);
+        assertTrue(executionAmount.get() <= amount + 1);
+        assertThrows(LightExecutionException.class, task::get);
+        pool.shutdown();
+    }
+
+    @Test
+    void testScheduleAtFixedRateFailure() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        var exception = new IllegalStateException("failure");
+        var executionAmount = new AtomicInteger();
+        LightFuture<Void> task = pool.scheduleAtFixedRate(() -> {
+            if (executionAmount.incrementAndGet() == 3) {
+                throw exception;
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertSame(exception, assertThrows(LightExecutionException.class, task::get).getCause());
+        Thread.sleep(100);
+        assertEquals(3, executionAmount.get());
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.scheduleAtFixedRate(() -> {}, 0, 0, TimeUnit.MILLISECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    void testShutdownCancelsTimers() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        LightFuture<Integer> task = pool.schedule(() -> 1, 1, TimeUnit.HOURS);
+        LightFuture<Void> periodicTask = pool.scheduleAtFixedRate(() -> {}, 1, 1, TimeUnit.HOURS);
+        pool.shutdown();
+        var exception = assertThrows(LightExecutionException.class, task::get);
+        assertTrue(exception.getCause() instanceof CancellationException);
+        assertThrows(LightExecutionException.class, periodicTask::get);
+        assertThrows(IllegalStateException.class, () -> pool.schedule(() -> 1, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testManyTimers() throws LightExecutionException, InterruptedException {
+        var pool = new ThreadPool(2);
+        var random = new Random(179);
+        var tasks = new ArrayList<LightFuture<Integer>>();
+        for (int i = 0; i < 10000; i++) {
+            int number = i;
+            tasks.add(pool.schedule(() -> number, random.nextInt(200), TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(Integer.valueOf(i), tasks.get(i).get());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void testScheduleOnVirtualThreadPool() throws LightExecutionException, InterruptedException {
+        var pool = ThreadPool.newVirtualThreadPool();
+        long start = System.nanoTime();
+        LightFuture<Long> task = pool.schedule(System::nanoTime, 50, TimeUnit.MILLISECONDS);
+        LightFuture<Integer> cancelledTask = pool.schedule(() -> 1, 1, TimeUnit.HOURS);
+        assertTrue(task.get() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        pool.shutdown();
+        assertThrows(LightExecutionException.class, cancelledTask::get);
+    }
+
+    @Test
+    void testCancelledTimersLeaveHeap() throws InterruptedException {
+        var pool = new ThreadPool(2);
+        LightFuture<Void> periodicTask = pool.scheduleAtFixedRate(() -> {}, 1, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(pool.schedule(() -> 1, 1, TimeUnit.HOURS).cancel());
+        }
+        assertTrue(pool.timers.size() <= 2);
+        assertTrue(periodicTask.cancel());
+        assertEquals(0, pool.timers.size());
+        pool.shutdown();
+    }
+
+    @Test
+    void testShutdownRunsDueTimers() throws InterruptedException, LightExecutionException {
+        var pool = new ThreadPool(1);
+        var release = occupyThread(pool);
+        LightFuture<Integer> dueTask = pool.schedule(() -> 1, 0, TimeUnit.MILLISECONDS);
+        LightFuture<Integer> laterTask = pool.schedule(() -> 2, 1, TimeUnit.HOURS);
+        Thread.sleep(10);
+        var releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+            release.countDown();
+        });
+        releaser.start();
+        pool.shutdown();
+        releaser.join();
+        assertEquals(Integer.valueOf(1), dueTask.get());
+        var exception = assertThrows(LightExecutionException.class, laterTask::get);
+        assertTrue(exception.getCause() instanceof CancellationException);
+    }
+
+    @Test
+    void testCancelledTimerFinishesVirtualThread()
+            throws NoSuchFieldException, IllegalAccessException, InterruptedException {
+        var pool = ThreadPool.newVirtualThreadPool();
+        LightFuture<Integer> task = pool.schedule(() -> 1, 1, TimeUnit.HOURS);
+        var taskThreads = pool.getClass().getDeclaredField("taskThreads");
+        taskThreads.setAccessible(true);
+        var threads = (Collection<?>) taskThreads.get(pool);
+        assertEquals(1, threads.size());
+        var thread = (Thread) threads.iterator().next();
+        assertTrue(task.cancel());
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(thread.isAlive());
+        pool.shutdown();
+    }
+
+    @Test
+    void testKeyedTasksKeepOrder() throws LightExecutionException, InterruptedException {
+        for (var pool : List.of(new ThreadPool(4, SchedulingMode.WORK_STEALING), ThreadPool.newVirtualThreadPool())) {
+            int keyAmount = 10;
+            var lists = new ArrayList<List<Integer>>();
+            var threads = new ArrayList<Set<Thread>>();
+            for (int key = 0; key < keyAmount; key++) {
+                lists.add(new ArrayList<>());
+                threads.add(ConcurrentHashMap.newKeySet());
+            }
+            var tasks = new ArrayList<LightFuture<Boolean>>();
+            for (int i = 0; i < 1000; i++) {
+                int key = i % keyAmount;
+                int number = i;
+                tasks.add(pool.add(key, () -> {
+                    threads.get(key).add(Thread.currentThread());
+                    return lists.get(key).add(number);
+                }));
+            }
+            for (var task : tasks) {
+                assertTrue(task.get());
+            }
+            pool.shutdown();
+            for (int key = 0; key < keyAmount; key++) {
+                assertEquals(100, lists.get(key).size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(Integer.valueOf(key + i * keyAmount), lists.get(key).get(i));
+                }
+            }
+            if (pool.getThreadAmount() > 0) {
+                for (var keyThreads : threads) {
+                    assertEquals(1, keyThreads.size());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testKeyedTasksOnShutdown() throws InterruptedException {
+        var pool = new ThreadPool(1);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        pool.add("key", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            return 0;
+        });
+        LightFuture<Integer> queuedTask = pool.add("key", () -> 1);
+        started.await();
+        List<LightFuture<?>> unstartedTasks = pool.shutdownNow();
+        release.countDown();
+        assertEquals(List.of(queuedTask), unstartedTasks);
+        assertThrows(LightExecutionException.class, queuedTask::get);
+        assertThrows(IllegalStateException.class, () -> pool.add("key", () -> 2));
+    }
 }
@@ -0,0 +1,65 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to sort a generated file of random lines larger than the memory budget.
+ * The input takes inputMegabytes on disk, runs and the output take as much again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ExternalSortBenchmark {
+    @Param({"1024", "4096"})
+    public int inputMegabytes;
+
+    @Param({"64", "256"})
+    public int memoryBudgetMegabytes;
+
+    private Path directory;
+    private Path input;
+    private Path output;
+    private ExternalSort sorter;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("external-sort-benchmark");
+        input = directory.resolve("input.txt");
+        output = directory.resolve("output.txt");
+        var random = new Random(179);
+        long size = (long) inputMegabytes << 20;
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (long written = 0; written < size; ) {
+                String line = Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + " payload " + written;
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        }
+        sorter = new ExternalSort((long) memoryBudgetMegabytes << 20, Runtime.getRuntime().availableProcessors(),
+                directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long sort() throws IOException {
+        sorter.sort(input, output);
+        return Files.size(output);
+    }
+}
@@ -0,0 +1,66 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/** Time to sort int arrays of shapes that break naive quick sort, with Qsort and with Arrays.parallelSort. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class InputShapeBenchmark {
+    @Param({"random", "allEqual", "sorted", "reversed", "organPipe", "fewDistinct"})
+    public String shape;
+
+    @Param({"1000000"})
+    public int size;
+
+    private int[] elements;
+    private int[] array;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(179);
+        switch (shape) {
+            case "allEqual":
+                elements = new int[size];
+                break;
+            case "sorted":
+                elements = IntStream.range(0, size).toArray();
+                break;
+            case "reversed":
+                elements = IntStream.range(0, size).map(i -> size - i).toArray();
+                break;
+            case "organPipe":
+                elements = IntStream.range(0, size).map(i -> Math.min(i, size - i)).toArray();
+                break;
+            case "fewDistinct":
+                elements = random.ints(size, 0, 16).toArray();
+                break;
+            default:
+                elements = random.ints(size).toArray();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyArray() {
+        array = elements.clone();
+    }
+
+    @Benchmark
+    public int[] qsort() {
+        Qsort.parallelSort(array);
+        return array;
+    }
+
+    @Benchmark
+    public int[] arrays() {
+        Arrays.parallelSort(array);
+        return array;
+    }
+}
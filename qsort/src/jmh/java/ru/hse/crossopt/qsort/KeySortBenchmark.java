@@ -0,0 +1,74 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time to sort records by a field with a comparator and with extracted primitive keys. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class KeySortBenchmark {
+    @Param({"1000000"})
+    public int size;
+
+    private List<Record> records;
+    private List<Record> list;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(179);
+        records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            records.add(new Record(random.nextInt(), "record " + i));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyList() {
+        list = new ArrayList<>(records);
+    }
+
+    @Benchmark
+    public List<Record> comparator() {
+        Qsort.parallelSort(list, Comparator.comparingInt(Record::getKey));
+        return list;
+    }
+
+    @Benchmark
+    public List<Record> intKey() {
+        Qsort.parallelSortByIntKey(list, Record::getKey);
+        return list;
+    }
+
+    @Benchmark
+    public List<Record> longKey() {
+        Qsort.parallelSortByLongKey(list, Record::getKey);
+        return list;
+    }
+
+    /** Record sorted by one of its fields. */
+    public static class Record {
+        private final int key;
+        private final String name;
+
+        public Record(int key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time to sort lists of random integers of different types and sizes with Qsort and with List.sort. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ListSortBenchmark {
+    @Param({"ArrayList", "LinkedList"})
+    public String listType;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Integer> elements;
+    private List<Integer> list;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(179);
+        elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(random.nextInt());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyList() {
+        list = listType.equals("LinkedList") ? new LinkedList<>(elements) : new ArrayList<>(elements);
+    }
+
+    @Benchmark
+    public List<Integer> qsortParallel() {
+        Qsort.parallelSort(list);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> qsortSimple() {
+        Qsort.simpleSort(list);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> listSort() {
+        list.sort(null);
+        return list;
+    }
+}
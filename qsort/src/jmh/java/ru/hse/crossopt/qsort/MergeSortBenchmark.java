@@ -0,0 +1,63 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time to sort lists of random integers with stable merge sort, with and without a reused buffer. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MergeSortBenchmark {
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private List<Integer> elements;
+    private List<Integer> list;
+    private final MergeSort.Buffer buffer = new MergeSort.Buffer();
+    private final int threadAmount = Runtime.getRuntime().availableProcessors();
+
+    @Setup
+    public void setUp() {
+        var random = new Random(179);
+        elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(random.nextInt());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyList() {
+        list = new ArrayList<>(elements);
+    }
+
+    @Benchmark
+    public List<Integer> mergeSort() {
+        MergeSort.parallelSort(list, Comparator.naturalOrder(), threadAmount, null);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> mergeSortWithBuffer() {
+        MergeSort.parallelSort(list, Comparator.naturalOrder(), threadAmount, buffer);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> qsort() {
+        Qsort.parallelSort(list, threadAmount);
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> listSort() {
+        list.sort(null);
+        return list;
+    }
+}
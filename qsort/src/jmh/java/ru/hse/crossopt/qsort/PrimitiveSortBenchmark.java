@@ -0,0 +1,76 @@
+package ru.hse.crossopt.qsort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time to sort random primitive arrays with Qsort and with Arrays.parallelSort, both on the common pool. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PrimitiveSortBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private int[] intsToSort;
+    private long[] longsToSort;
+    private double[] doublesToSort;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(179);
+        ints = random.ints(size).toArray();
+        longs = random.longs(size).toArray();
+        doubles = random.doubles(size).toArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyArrays() {
+        intsToSort = ints.clone();
+        longsToSort = longs.clone();
+        doublesToSort = doubles.clone();
+    }
+
+    @Benchmark
+    public int[] qsortInts() {
+        Qsort.parallelSort(intsToSort);
+        return intsToSort;
+    }
+
+    @Benchmark
+    public int[] arraysInts() {
+        Arrays.parallelSort(intsToSort);
+        return intsToSort;
+    }
+
+    @Benchmark
+    public long[] qsortLongs() {
+        Qsort.parallelSort(longsToSort);
+        return longsToSort;
+    }
+
+    @Benchmark
+    public long[] arraysLongs() {
+        Arrays.parallelSort(longsToSort);
+        return longsToSort;
+    }
+
+    @Benchmark
+    public double[] qsortDoubles() {
+        Qsort.parallelSort(doublesToSort);
+        return doublesToSort;
+    }
+
+    @Benchmark
+    public double[] arraysDoubles() {
+        Arrays.parallelSort(doublesToSort);
+        return doublesToSort;
+    }
+}
@@ -0,0 +1,221 @@
+package ru.hse.crossopt.qsort;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Class that sorts files too large to fit in memory. Records are lines of a UTF-8 text file.
+ * Lines are read into runs that fit in the memory budget, every run is sorted in place via parallel quick sort
+ * and written to a temporary file, then the runs are merged with a heap. If there are more runs than can be
+ * merged at once within the budget, they are merged in several passes.
+ */
+public class ExternalSort {
+    /** Estimated memory taken by a line besides its characters: the string and its array. */
+    private static final int LINE_OVERHEAD = 56;
+    /** Estimated memory taken by a reference to a line in the array of a run. */
+    private static final int REFERENCE_SIZE = 8;
+    private static final int INITIAL_RUN_CAPACITY = 16;
+    /** Size of the buffer of every run read during a merge, in chars that take two bytes each. */
+    private static final int MERGE_BUFFER_SIZE = 1 << 16;
+
+    private final long memoryBudget;
+    private final int threadAmount;
+    private final @Nullable Path temporaryDirectory;
+
+    /**
+     * Creates a sorter that keeps temporary files in the default temporary directory.
+     * @param memoryBudget the approximate amount of bytes the lines of one run may take in memory.
+     * @param threadAmount the amount of threads sorting every run.
+     * @throws IllegalArgumentException if the memory budget or thread amount is non-positive.
+     */
+    public ExternalSort(long memoryBudget, int threadAmount) throws IllegalArgumentException {
+        this(memoryBudget, threadAmount, null);
+    }
+
+    /**
+     * Creates a sorter.
+     * @param memoryBudget the approximate amount of bytes the lines of one run may take in memory.
+     * @param threadAmount the amount of threads sorting every run.
+     * @param temporaryDirectory the directory for sorted runs, or null for the default temporary directory.
+     * @throws IllegalArgumentException if the memory budget or thread amount is non-positive.
+     */
+    public ExternalSort(long memoryBudget, int threadAmount, @Nullable Path temporaryDirectory)
+            throws IllegalArgumentException {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget should be positive.");
+        }
+        if (threadAmount <= 0) {
+            throw new IllegalArgumentException("Thread amount should be positive.");
+        }
+        this.memoryBudget = memoryBudget;
+        this.threadAmount = threadAmount;
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    /**
+     * Sorts lines of the input file in natural order and writes them to the output file.
+     * @param input the file to sort.
+     * @param output the file for sorted lines, it is replaced if it exists.
+     * @throws IOException if reading or writing failed.
+     */
+    public void sort(@NotNull Path input, @NotNull Path output) throws IOException {
+        sort(input, output, Comparator.naturalOrder());
+    }
+
+    /**
+     * Sorts lines of the input file in the order of the comparator and writes them to the output file.
+     * Temporary files are deleted when the sort finishes, even if it fails.
+     * @param input the file to sort.
+     * @param output the file for sorted lines, it is replaced if it exists.
+     * @param comparator the comparator defining the order of lines.
+     * @throws IOException if reading or writing failed.
+     */
+    public void sort(@NotNull Path input, @NotNull Path output, @NotNull Comparator<? super String> comparator)
+            throws IOException {
+        var temporaryFiles = new ArrayList<Path>();
+        List<Path> runs = new ArrayList<>();
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                var run = new String[INITIAL_RUN_CAPACITY]; // reused by all runs and sorted in place
+                int lineAmount = 0;
+                long runSize = 0;
+                String line;
+                do {
+                    line = reader.readLine();
+                    if (line != null) {
+                        if (lineAmount == run.length) {
+                            run = Arrays.copyOf(run, 2 * run.length);
+                        }
+                        run[lineAmount++] = line;
+                        runSize += LINE_OVERHEAD + 2L * line.length();
+                        // growing the full array for the next line briefly takes both the old and the new one
+                        long arraySize = REFERENCE_SIZE * (lineAmount == run.length ? 3L : 1L) * run.length;
+                        if (runSize + arraySize < memoryBudget) {
+                            continue;
+                        }
+                    }
+                    Qsort.parallelSort(run, lineAmount, comparator, Qsort.getPool(threadAmount));
+                    if (line == null && runs.isEmpty()) { // the whole input fits in memory
+                        writeRun(run, lineAmount, output);
+                        return;
+                    }
+                    if (lineAmount > 0) {
+                        Path runFile = createTemporaryFile(temporaryFiles);
+                        runs.add(runFile);
+                        writeRun(run, lineAmount, runFile);
+                        Arrays.fill(run, 0, lineAmount, null); // lines of the next run alone take the budget
+                        lineAmount = 0;
+                        runSize = 0;
+                    }
+                } while (line != null);
+            }
+            int mergeAmount = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / (2L * MERGE_BUFFER_SIZE)));
+            while (runs.size() > mergeAmount) {
+                var mergedRuns = new ArrayList<Path>();
+                for (int i = 0; i < runs.size(); i += mergeAmount) {
+                    List<Path> group = runs.subList(i, Math.min(i + mergeAmount, runs.size()));
+                    Path mergedRun = createTemporaryFile(temporaryFiles);
+                    mergedRuns.add(mergedRun);
+                    merge(group, mergedRun, comparator);
+                    for (Path run : group) {
+                        Files.delete(run);
+                    }
+                }
+                runs = mergedRuns;
+            }
+            merge(runs, output, comparator);
+        } finally {
+            for (Path file : temporaryFiles) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** Writes the first lines of the run to the file, every line ends with a line feed. */
+    private static void writeRun(@NotNull String[] run, int lineAmount, @NotNull Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lineAmount; i++) {
+                writer.write(run[i]);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /** Creates an empty temporary file for a run and adds it to the given list of files to delete. */
+    @NotNull private Path createTemporaryFile(@NotNull List<Path> temporaryFiles) throws IOException {
+        Path file = temporaryDirectory == null ? Files.createTempFile("run", ".txt")
+                : Files.createTempFile(temporaryDirectory, "run", ".txt");
+        temporaryFiles.add(file);
+        return file;
+    }
+
+    /**
+     * Merges sorted runs into the output. The heap holds the current line of every run,
+     * on equal lines the run that comes earlier in the input goes first.
+     */
+    private static void merge(@NotNull List<Path> runs, @NotNull Path output,
+                              @NotNull Comparator<? super String> comparator) throws IOException {
+        var readers = new ArrayList<RunReader>();
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            var heap = new PriorityQueue<RunReader>((first, second) -> {
+                int comparison = comparator.compare(first.line, second.line);
+                return comparison != 0 ? comparison : Integer.compare(first.number, second.number);
+            });
+            for (Path run : runs) {
+                var reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+            RunReader reader;
+            while ((reader = heap.poll()) != null) {
+                writer.write(reader.line);
+                writer.write('\n');
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.reader.close();
+            }
+        }
+    }
+
+    /** Reader of a sorted run that keeps its current line. */
+    private static class RunReader {
+        private final @NotNull BufferedReader reader;
+        private final int number;
+        private @Nullable String line;
+
+        /**
+         * Opens the run.
+         * @param number the position of the run among merged runs.
+         */
+        private RunReader(@NotNull Path run, int number) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(Files.newInputStream(run), StandardCharsets.UTF_8),
+                    MERGE_BUFFER_SIZE);
+            this.number = number;
+        }
+
+        /** Reads the next line of the run, returns false if the run ended. */
+        private boolean advance() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package ru.hse.crossopt.qsort;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class that sorts given list using stable merge sort: equal elements keep their order.
+ * Halves are sorted in parallel, and large merges are split into independent parts by binary search,
+ * so the final merges use all threads too.
+ * The list is copied into an array and a scratch array of the same size, they may be kept in a buffer
+ * to be reused by the next sorts.
+ */
+public class MergeSort {
+    /** Amount of elements after which parallel sort will not split the range and use simple sort instead. */
+    private static final int AMOUNT_FOR_SIMPLE_SORT = 1 << 13;
+    /** Amount of elements after which parallel merge will not split the ranges and merge them in one thread. */
+    private static final int AMOUNT_FOR_SIMPLE_MERGE = 1 << 13;
+    /** Amount of elements after which merge sort will not split the range and use insertion sort instead. */
+    private static final int AMOUNT_FOR_INSERTION_SORT = 32;
+
+    /**
+     * Sorts the elements of given list via merge sort using the common fork-join pool.
+     * @param list a list to sort.
+     * @param <T> the type of the list elements. Must implement the Comparable interface.
+     */
+    public static <T extends Comparable<? super T>> void parallelSort(@NotNull List<T> list) {
+        parallelSort(list, Comparator.naturalOrder(), ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Sorts the elements of given list in the order of the comparator via merge sort using the common fork-join pool.
+     * @param list a list to sort.
+     * @param comparator the comparator defining the order.
+     * @param <T> the type of the list elements.
+     */
+    public static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator) {
+        parallelSort(list, comparator, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Sorts the elements of given list in the order of the comparator via merge sort using multiple threads.
+     * The threads are taken from the fork-join pool shared with Qsort by all calls with the same thread amount,
+     * lists too small to be split are sorted in the calling thread.
+     * @param list a list to sort.
+     * @param comparator the comparator defining the order.
+     * @param threadAmount the amount of threads to be used.
+     * @param buffer the buffer to copy the list into, or null to allocate new arrays.
+     * @param <T> the type of the list elements.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     * @throws IllegalStateException if the buffer is used by another sort at the moment.
+     */
+    public static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator,
+                                        int threadAmount, @Nullable Buffer buffer)
+            throws IllegalArgumentException, IllegalStateException {
+        parallelSort(list, comparator, Qsort.getPool(threadAmount), buffer);
+    }
+
+    /**
+     * Sorts the given list via merge sort in one thread.
+     * @param list a list to sort.
+     * @param <T> the type of the list elements. Must implement the Comparable interface.
+     */
+    public static <T extends Comparable<? super T>> void simpleSort(@NotNull List<T> list) {
+        simpleSort(list, Comparator.naturalOrder());
+    }
+
+    /**
+     * Sorts the given list in the order of the comparator via merge sort in one thread.
+     * @param list a list to sort.
+     * @param comparator the comparator defining the order.
+     * @param <T> the type of the list elements.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void simpleSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator) {
+        Object[] array = list.toArray();
+        Object[] scratch = array.clone();
+        new MergeSortTask(scratch, array, 0, array.length, (Comparator<Object>) comparator).sort();
+        Qsort.setAll(list, array);
+    }
+
+    /** Sorts the list in the order of the comparator in the given pool, using the arrays of the buffer if given. */
+    @SuppressWarnings("unchecked")
+    private static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator,
+                                         @NotNull ForkJoinPool pool, @Nullable Buffer buffer) {
+        if (buffer == null) {
+            buffer = new Buffer();
+        }
+        if (!buffer.isUsed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Buffer is used by another sort.");
+        }
+        try {
+            int size = list.size();
+            buffer.ensureCapacity(size);
+            Object[] array = buffer.elements;
+            int index = 0;
+            for (T element : list) {
+                array[index++] = element;
+            }
+            System.arraycopy(array, 0, buffer.scratch, 0, size);
+            var task = new MergeSortTask(buffer.scratch, array, 0, size, (Comparator<Object>) comparator);
+            if (size <= AMOUNT_FOR_SIMPLE_SORT) {
+                task.sort();
+            } else {
+                pool.invoke(task);
+            }
+            Qsort.setAll(list, array);
+        } finally {
+            buffer.clear(list.size());
+            buffer.isUsed.set(false);
+        }
+    }
+
+    /**
+     * Arrays kept between sorts, so that sorting lists of similar sizes does not allocate memory.
+     * The arrays grow to the size of the largest sorted list and are cleared after every sort.
+     * A buffer may be used by one sort at a time.
+     */
+    public static class Buffer {
+        private @NotNull Object[] elements = new Object[0];
+        private @NotNull Object[] scratch = new Object[0];
+        private final @NotNull AtomicBoolean isUsed = new AtomicBoolean();
+
+        /** Makes the arrays hold at least the given amount of elements. */
+        private void ensureCapacity(int size) {
+            if (elements.length < size) {
+                elements = new Object[size];
+                scratch = new Object[size];
+            }
+        }
+
+        /** Removes references to the sorted elements, so that the buffer does not keep them alive. */
+        private void clear(int size) {
+            int end = Math.min(size, elements.length);
+            Arrays.fill(elements, 0, end, null);
+            Arrays.fill(scratch, 0, end, null);
+        }
+    }
+
+    /**
+     * Task sorting a range: the range of the destination array gets sorted elements of the same range
+     * of the source array. Both arrays should contain the same elements in the range before the sort,
+     * the source is used as scratch space.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static class MergeSortTask extends RecursiveAction {
+        private final @NotNull Object[] source;
+        private final @NotNull Object[] destination;
+        private final int left;
+        private final int right;
+        private final @NotNull Comparator<Object> comparator;
+
+        private MergeSortTask(@NotNull Object[] source, @NotNull Object[] destination, int left, int right,
+                              @NotNull Comparator<Object> comparator) {
+            this.source = source;
+            this.destination = destination;
+            this.left = left;
+            this.right = right;
+            this.comparator = comparator;
+        }
+
+        /** Sorts the halves swapping roles of the arrays in parallel, then merges them in parallel. */
+        @Override
+        protected void compute() {
+            if (right - left <= AMOUNT_FOR_SIMPLE_SORT) {
+                sort();
+                return;
+            }
+            int middle = (left + right) >>> 1;
+            invokeAll(new MergeSortTask(destination, source, left, middle, comparator),
+                    new MergeSortTask(destination, source, middle, right, comparator));
+            if (comparator.compare(source[middle - 1], source[middle]) <= 0) {
+                System.arraycopy(source, left, destination, left, right - left);
+                return;
+            }
+            new MergeTask(source, left, middle, middle, right, destination, left, comparator).invoke();
+        }
+
+        /** Sorts the range in the current thread. */
+        private void sort() {
+            sort(source, destination, left, right);
+        }
+
+        /** Sorts the range of the source into the destination, both contain the same elements in the range. */
+        private void sort(@NotNull Object[] source, @NotNull Object[] destination, int left, int right) {
+            if (right - left <= AMOUNT_FOR_INSERTION_SORT) {
+                insertionSort(destination, left, right);
+                return;
+            }
+            int middle = (left + right) >>> 1;
+            sort(destination, source, left, middle);
+            sort(destination, source, middle, right);
+            if (comparator.compare(source[middle - 1], source[middle]) <= 0) {
+                System.arraycopy(source, left, destination, left, right - left);
+                return;
+            }
+            merge(source, left, middle, middle, right, destination, left, comparator);
+        }
+
+        /** Sorts the range of the array via insertion sort, which is stable. */
+        private void insertionSort(@NotNull Object[] array, int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                Object value = array[i];
+                int j = i - 1;
+                while (j >= left && comparator.compare(array[j], value) > 0) {
+                    array[j + 1] = array[j];
+                    j--;
+                }
+                array[j + 1] = value;
+            }
+        }
+    }
+
+    /**
+     * Task merging two sorted ranges of the source into the destination. Large merges are split in two:
+     * the middle element of the longer range is found in the shorter one by binary search,
+     * then the parts before and after it are merged in parallel.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static class MergeTask extends RecursiveAction {
+        private final @NotNull Object[] source;
+        private final int firstLeft;
+        private final int firstRight;
+        private final int secondLeft;
+        private final int secondRight;
+        private final @NotNull Object[] destination;
+        private final int destinationLeft;
+        private final @NotNull Comparator<Object> comparator;
+
+        private MergeTask(@NotNull Object[] source, int firstLeft, int firstRight, int secondLeft, int secondRight,
+                          @NotNull Object[] destination, int destinationLeft, @NotNull Comparator<Object> comparator) {
+            this.source = source;
+            this.firstLeft = firstLeft;
+            this.firstRight = firstRight;
+            this.secondLeft = secondLeft;
+            this.secondRight = secondRight;
+            this.destination = destination;
+            this.destinationLeft = destinationLeft;
+            this.comparator = comparator;
+        }
+
+        /**
+         * Merges the ranges, splitting them if they are large. Elements of the first range go before
+         * equal elements of the second one: when the first range is split at an element, elements of the second
+         * range equal to it go to the right part, and vice versa.
+         */
+        @Override
+        protected void compute() {
+            int firstSize = firstRight - firstLeft;
+            int secondSize = secondRight - secondLeft;
+            if (firstSize + secondSize <= AMOUNT_FOR_SIMPLE_MERGE || firstSize == 0 || secondSize == 0) {
+                merge(source, firstLeft, firstRight, secondLeft, secondRight, destination, destinationLeft, comparator);
+                return;
+            }
+            int firstMiddle;
+            int secondMiddle;
+            if (firstSize >= secondSize) {
+                firstMiddle = (firstLeft + firstRight) >>> 1;
+                secondMiddle = lowerBound(source[firstMiddle], secondLeft, secondRight);
+            } else {
+                secondMiddle = (secondLeft + secondRight) >>> 1;
+                firstMiddle = upperBound(source[secondMiddle], firstLeft, firstRight);
+            }
+            int destinationMiddle = destinationLeft + (firstMiddle - firstLeft) + (secondMiddle - secondLeft);
+            invokeAll(new MergeTask(source, firstLeft, firstMiddle, secondLeft, secondMiddle,
+                            destination, destinationLeft, comparator),
+                    new MergeTask(source, firstMiddle, firstRight, secondMiddle, secondRight,
+                            destination, destinationMiddle, comparator));
+        }
+
+        /** Returns the index of the first element of the sorted range that is not less than the value. */
+        private int lowerBound(@Nullable Object value, int left, int right) {
+            while (left < right) {
+                int middle = (left + right) >>> 1;
+                if (comparator.compare(source[middle], value) < 0) {
+                    left = middle + 1;
+                } else {
+                    right = middle;
+                }
+            }
+            return left;
+        }
+
+        /** Returns the index of the first element of the sorted range that is greater than the value. */
+        private int upperBound(@Nullable Object value, int left, int right) {
+            while (left < right) {
+                int middle = (left + right) >>> 1;
+                if (comparator.compare(source[middle], value) <= 0) {
+                    left = middle + 1;
+                } else {
+                    right = middle;
+                }
+            }
+            return left;
+        }
+    }
+
+    /** Merges two sorted ranges of the source into the destination, taking the first range's element on ties. */
+    private static void merge(@NotNull Object[] source, int firstLeft, int firstRight, int secondLeft,
+                              int secondRight, @NotNull Object[] destination, int destinationLeft,
+                              @NotNull Comparator<Object> comparator) {
+        int first = firstLeft;
+        int second = secondLeft;
+        int index = destinationLeft;
+        while (first < firstRight && second < secondRight) {
+            if (comparator.compare(source[first], source[second]) <= 0) {
+                destination[index++] = source[first++];
+            } else {
+                destination[index++] = source[second++];
+            }
+        }
+        System.arraycopy(source, first, destination, index, firstRight - first);
+        index += firstRight - first;
+        System.arraycopy(source, second, destination, index, secondRight - second);
+    }
+}
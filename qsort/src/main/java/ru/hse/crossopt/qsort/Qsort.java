@@ -2,20 +2,40 @@ package ru.hse.crossopt.qsort;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 /**
  * Class that sorts given list using quick sort.
- * Sorted elements must implement the Comparable interface.
+ * Sorted elements must implement the Comparable interface or be sorted with a comparator or by primitive keys.
+ * Lists are copied into an array that is sorted and written back, so they are never accessed by index.
+ * Arrays of primitive values are sorted without boxing, in the order of Arrays.sort.
  * */
 public class Qsort {
-    /** Amount of elements after which parallel sort will not make new threads and use simple sort instead.  */
-    private static final int AMOUNT_FOR_SIMPLE_SORT = 42;
+    /** Amount of elements after which parallel sort will not split the range and use simple sort instead.  */
+    private static final int AMOUNT_FOR_SIMPLE_SORT = 1 << 13;
+    /** Amount of elements after which simple sort will not split the range and use insertion sort instead. */
+    private static final int AMOUNT_FOR_INSERTION_SORT = 32;
+    /** Pools shared by all calls with the same amount of threads, their threads finish when idle. */
+    private static final @NotNull ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Sorts the elements of given list via quick sort using the common fork-join pool.
+     * @param list a list to sort.
+     * @param <T> the type of the list elements. Must implement the Comparable interface.
+     */
+    public static <T extends Comparable<? super T>> void parallelSort(@NotNull List<T> list) {
+        parallelSort(list, Comparator.naturalOrder(), ForkJoinPool.commonPool());
+    }
 
     /**
      * Sorts the elements of given list via quick sort using multiple threads.
+     * The threads are taken from a fork-join pool shared by all calls with the same thread amount,
+     * lists too small to be split are sorted in the calling thread.
      * @param list a list to sort.
      * @param threadAmount the amount of threads to be used.
      * @param <T> the type of the list elements. Must implement the Comparable interface.
@@ -23,21 +43,141 @@ public class Qsort {
      */
     public static <T extends Comparable<? super T>> void parallelSort(@NotNull List<T> list, int threadAmount)
             throws IllegalArgumentException {
-        if (threadAmount <= 0) {
-            throw new IllegalArgumentException("Thread amount should be positive.");
-        }
+        parallelSort(list, Comparator.naturalOrder(), getPool(threadAmount));
+    }
 
-        ExecutorService threadPool = Executors.newFixedThreadPool(threadAmount);
-        var latch = new CountDownLatch(list.size());
-        threadPool.submit(new QsortTask<>(0, list.size(), list, latch, threadPool));
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Failed to sort list.");
-        } finally {
-            threadPool.shutdown();
-        }
+    /**
+     * Sorts the elements of given list in the order of the comparator via quick sort using the common fork-join pool.
+     * @param list a list to sort.
+     * @param comparator the comparator defining the order.
+     * @param <T> the type of the list elements.
+     */
+    public static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator) {
+        parallelSort(list, comparator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the elements of given list in the order of the comparator via quick sort using multiple threads,
+     * as parallelSort of comparable elements does.
+     * @param list a list to sort.
+     * @param comparator the comparator defining the order.
+     * @param threadAmount the amount of threads to be used.
+     * @param <T> the type of the list elements.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator,
+                                        int threadAmount) throws IllegalArgumentException {
+        parallelSort(list, comparator, getPool(threadAmount));
+    }
+
+    /**
+     * Sorts the elements of given list by int keys using the common fork-join pool.
+     * The key of every element is extracted once, then keys are sorted as primitives together with indices
+     * of their elements, so elements with equal keys keep their order.
+     * @param list a list to sort.
+     * @param keyExtractor the function returning the key of an element.
+     * @param <T> the type of the list elements.
+     */
+    public static <T> void parallelSortByIntKey(@NotNull List<T> list, @NotNull ToIntFunction<? super T> keyExtractor) {
+        parallelSortByIntKey(list, keyExtractor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the elements of given list by int keys using multiple threads, as parallelSortByIntKey without
+     * thread amount does.
+     * @param list a list to sort.
+     * @param keyExtractor the function returning the key of an element.
+     * @param threadAmount the amount of threads to be used.
+     * @param <T> the type of the list elements.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static <T> void parallelSortByIntKey(@NotNull List<T> list, @NotNull ToIntFunction<? super T> keyExtractor,
+                                                int threadAmount) throws IllegalArgumentException {
+        parallelSortByIntKey(list, keyExtractor, getPool(threadAmount));
+    }
+
+    /**
+     * Sorts the elements of given list by long keys using the common fork-join pool.
+     * The key of every element is extracted once, then keys are sorted as primitives together with indices
+     * of their elements, so elements with equal keys keep their order.
+     * @param list a list to sort.
+     * @param keyExtractor the function returning the key of an element.
+     * @param <T> the type of the list elements.
+     */
+    public static <T> void parallelSortByLongKey(@NotNull List<T> list,
+                                                 @NotNull ToLongFunction<? super T> keyExtractor) {
+        parallelSortByLongKey(list, keyExtractor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the elements of given list by long keys using multiple threads, as parallelSortByLongKey without
+     * thread amount does.
+     * @param list a list to sort.
+     * @param keyExtractor the function returning the key of an element.
+     * @param threadAmount the amount of threads to be used.
+     * @param <T> the type of the list elements.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static <T> void parallelSortByLongKey(@NotNull List<T> list,
+                                                 @NotNull ToLongFunction<? super T> keyExtractor,
+                                                 int threadAmount) throws IllegalArgumentException {
+        parallelSortByLongKey(list, keyExtractor, getPool(threadAmount));
+    }
+
+    /**
+     * Sorts the given array via quick sort using the common fork-join pool.
+     * @param array an array to sort.
+     */
+    public static void parallelSort(@NotNull int[] array) {
+        parallelSort(new IntArraySorter(array), array.length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the given array via quick sort using multiple threads, as parallelSort of a list does.
+     * @param array an array to sort.
+     * @param threadAmount the amount of threads to be used.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static void parallelSort(@NotNull int[] array, int threadAmount) throws IllegalArgumentException {
+        parallelSort(new IntArraySorter(array), array.length, getPool(threadAmount));
+    }
+
+    /**
+     * Sorts the given array via quick sort using the common fork-join pool.
+     * @param array an array to sort.
+     */
+    public static void parallelSort(@NotNull long[] array) {
+        parallelSort(new LongArraySorter(array), array.length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the given array via quick sort using multiple threads, as parallelSort of a list does.
+     * @param array an array to sort.
+     * @param threadAmount the amount of threads to be used.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static void parallelSort(@NotNull long[] array, int threadAmount) throws IllegalArgumentException {
+        parallelSort(new LongArraySorter(array), array.length, getPool(threadAmount));
+    }
+
+    /**
+     * Sorts the given array via quick sort using the common fork-join pool.
+     * Values are ordered as by Double.compare: -0.0 before 0.0 and NaN after everything else.
+     * @param array an array to sort.
+     */
+    public static void parallelSort(@NotNull double[] array) {
+        parallelSort(new DoubleArraySorter(array), array.length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts the given array via quick sort using multiple threads, as parallelSort of a list does.
+     * Values are ordered as by Double.compare: -0.0 before 0.0 and NaN after everything else.
+     * @param array an array to sort.
+     * @param threadAmount the amount of threads to be used.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    public static void parallelSort(@NotNull double[] array, int threadAmount) throws IllegalArgumentException {
+        parallelSort(new DoubleArraySorter(array), array.length, getPool(threadAmount));
     }
 
     /**
@@ -46,80 +186,611 @@ public class Qsort {
      * @param <T> the type of the list elements. Must implement the Comparable interface.
      */
     public static <T extends Comparable<? super T>> void simpleSort(@NotNull List<T> list) {
-        simpleSort(list, 0, list.size());
+        simpleSort(list, Comparator.naturalOrder());
     }
 
     /**
-     * Sorts elements of the list at indices from left to right via quick sort in one thread.
+     * Sorts the given list in the order of the comparator via quick sort in one thread.
      * @param list a list to sort.
-     * @param left the left index of range to sort, inclusive.
-     * @param right the right index of range to sort, non-inclusive.
-     * @param <T> the type of the list elements. Must implement the Comparable interface.
+     * @param comparator the comparator defining the order.
+     * @param <T> the type of the list elements.
      */
-    private static <T extends Comparable<? super T>> void simpleSort(@NotNull List<T> list, int left, int right) {
-        if (right - left <= 1) {
+    @SuppressWarnings("unchecked")
+    public static <T> void simpleSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator) {
+        Object[] array = list.toArray();
+        new ObjectArraySorter(array, (Comparator<Object>) comparator).sort(0, array.length);
+        setAll(list, array);
+    }
+
+    /** Sorts the list in the order of the comparator in the given pool. */
+    @SuppressWarnings("unchecked")
+    private static <T> void parallelSort(@NotNull List<T> list, @NotNull Comparator<? super T> comparator,
+                                         @NotNull ForkJoinPool pool) {
+        Object[] array = list.toArray();
+        parallelSort(new ObjectArraySorter(array, (Comparator<Object>) comparator), array.length, pool);
+        setAll(list, array);
+    }
+
+    /**
+     * Sorts the first size elements of the array in place in the order of the comparator in the given pool,
+     * so callers that keep elements in an array need no copy of it.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void parallelSort(@NotNull T[] array, int size, @NotNull Comparator<? super T> comparator,
+                                 @NotNull ForkJoinPool pool) {
+        parallelSort(new ObjectArraySorter(array, (Comparator<Object>) comparator), size, pool);
+    }
+
+    /**
+     * Sorts the list by int keys in the given pool. A key and the index of its element are packed into one long,
+     * the key in the higher half, so sorting the longs orders elements by keys and then by indices.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void parallelSortByIntKey(@NotNull List<T> list,
+                                                 @NotNull ToIntFunction<? super T> keyExtractor,
+                                                 @NotNull ForkJoinPool pool) {
+        Object[] array = list.toArray();
+        var keys = new long[array.length];
+        for (int i = 0; i < array.length; i++) {
+            keys[i] = (long) keyExtractor.applyAsInt((T) array[i]) << Integer.SIZE | i;
+        }
+        parallelSort(new LongArraySorter(keys), keys.length, pool);
+        var sortedArray = new Object[array.length];
+        for (int i = 0; i < array.length; i++) {
+            sortedArray[i] = array[(int) keys[i]];
+        }
+        setAll(list, sortedArray);
+    }
+
+    /** Sorts the list by long keys in the given pool, sorting the keys together with the indices of elements. */
+    @SuppressWarnings("unchecked")
+    private static <T> void parallelSortByLongKey(@NotNull List<T> list,
+                                                  @NotNull ToLongFunction<? super T> keyExtractor,
+                                                  @NotNull ForkJoinPool pool) {
+        Object[] array = list.toArray();
+        var keys = new long[array.length];
+        var indices = new int[array.length];
+        for (int i = 0; i < array.length; i++) {
+            keys[i] = keyExtractor.applyAsLong((T) array[i]);
+            indices[i] = i;
+        }
+        parallelSort(new LongKeySorter(keys, indices), keys.length, pool);
+        var sortedArray = new Object[array.length];
+        for (int i = 0; i < array.length; i++) {
+            sortedArray[i] = array[indices[i]];
+        }
+        setAll(list, sortedArray);
+    }
+
+    /** Replaces the elements of the list with the first elements of the array, in one pass. */
+    @SuppressWarnings("unchecked")
+    static <T> void setAll(@NotNull List<T> list, @NotNull Object[] array) {
+        ListIterator<T> iterator = list.listIterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            iterator.next();
+            iterator.set((T) array[i]);
+        }
+    }
+
+    /**
+     * Returns the fork-join pool shared by all calls with the given amount of threads.
+     * @throws IllegalArgumentException if thread amount is non-positive.
+     */
+    @NotNull static ForkJoinPool getPool(int threadAmount) {
+        if (threadAmount <= 0) {
+            throw new IllegalArgumentException("Thread amount should be positive.");
+        }
+        return POOLS.computeIfAbsent(threadAmount, ForkJoinPool::new);
+    }
+
+    /** Sorts the first size elements in the given pool unless they are too few to be split. */
+    private static void parallelSort(@NotNull RangeSorter sorter, int size, @NotNull ForkJoinPool pool) {
+        if (size <= AMOUNT_FOR_SIMPLE_SORT) {
+            sorter.sort(0, size);
             return;
         }
-        int middle = partition(list, left, right);
-        simpleSort(list, left, middle);
-        simpleSort(list, middle + 1, right);
+        pool.invoke(new QsortTask(0, size, getDepthLimit(size), sorter));
     }
 
     /**
-     * Partition the elements of a list at indices from left to right by comparison to a random element.
-     * @param list a list to partition.
-     * @param left the left index of range to partition, inclusive.
-     * @param right the right index of range to partition, non-inclusive.
-     * @param <T> the type of the list elements. Must implement the Comparable interface.
-     * @return index of an element such that all elements to the left of it are not greater than it
-     * and all elements to the right are not smaller than it.
+     * Sequence of elements that is sorted via quick sort by ranges.
+     * Ranges are split into elements less than, equal to and greater than a random pivot, so equal elements
+     * are not sorted again. Small ranges are sorted by insertion, and ranges split too many times
+     * are sorted by heap sort, so that any input is sorted in O(n log n).
      */
-    private static <T extends Comparable<? super T>> int partition(@NotNull List<T> list, int left, int right) {
-        int pivotIndex = (ThreadLocalRandom.current().nextInt(left, right));
-        T pivotValue = list.get(pivotIndex);
-        Collections.swap(list, pivotIndex, right - 1);
-        int middle = left;
-        for(int i = left; i < right; i++) {
-            if(pivotValue.compareTo(list.get(i)) > 0) {
-                Collections.swap(list, middle, i);
-                middle++;
+    private abstract static class RangeSorter {
+        /**
+         * Sorts elements at indices from left to right in one thread.
+         * @param left the left index of range to sort, inclusive.
+         * @param right the right index of range to sort, non-inclusive.
+         */
+        void sort(int left, int right) {
+            sort(left, right, getDepthLimit(right - left));
+        }
+
+        /**
+         * Sorts elements at indices from left to right in one thread, splitting ranges at most the given times.
+         * Recurses into the smaller part and loops over the larger one, so the stack depth is logarithmic.
+         */
+        void sort(int left, int right, int depthLimit) {
+            while (right - left > AMOUNT_FOR_INSERTION_SORT) {
+                if (depthLimit-- == 0) {
+                    heapSort(left, right);
+                    return;
+                }
+                long bounds = partition(left, right);
+                int lessEnd = getLessEnd(bounds);
+                int greaterStart = getGreaterStart(bounds);
+                if (lessEnd - left < right - greaterStart) {
+                    sort(left, lessEnd, depthLimit);
+                    left = greaterStart;
+                } else {
+                    sort(greaterStart, right, depthLimit);
+                    right = lessEnd;
+                }
+            }
+            insertionSort(left, right);
+        }
+
+        /**
+         * Partition the elements at indices from left to right by comparison to a random element.
+         * @param left the left index of range to partition, inclusive.
+         * @param right the right index of range to partition, non-inclusive.
+         * @return the end of elements less than the pivot and the start of elements greater than it,
+         * packed by packBounds. Elements between them are equal to the pivot.
+         */
+        abstract long partition(int left, int right);
+
+        /** Sorts elements at indices from left to right via insertion sort. */
+        abstract void insertionSort(int left, int right);
+
+        /** Sorts elements at indices from left to right via heap sort. */
+        abstract void heapSort(int left, int right);
+    }
+
+    /** Returns the amount of times a range of the given size may be split before heap sort is used for it. */
+    private static int getDepthLimit(int size) {
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size));
+    }
+
+    /** Packs the bounds of the part of elements equal to the pivot into one value. */
+    private static long packBounds(int lessEnd, int greaterStart) {
+        return (long) lessEnd << Integer.SIZE | greaterStart;
+    }
+
+    /** Returns the end of elements less than the pivot from the packed bounds. */
+    private static int getLessEnd(long bounds) {
+        return (int) (bounds >>> Integer.SIZE);
+    }
+
+    /** Returns the start of elements greater than the pivot from the packed bounds. */
+    private static int getGreaterStart(long bounds) {
+        return (int) bounds;
+    }
+
+    /** Sorter of an array of elements in the order of a comparator. */
+    private static class ObjectArraySorter extends RangeSorter {
+        private final @NotNull Object[] array;
+        private final @NotNull Comparator<Object> comparator;
+
+        private ObjectArraySorter(@NotNull Object[] array, @NotNull Comparator<Object> comparator) {
+            this.array = array;
+            this.comparator = comparator;
+        }
+
+        @Override
+        long partition(int left, int right) {
+            Object pivotValue = array[ThreadLocalRandom.current().nextInt(left, right)];
+            int lessEnd = left;
+            int greaterStart = right;
+            int i = left;
+            while (i < greaterStart) {
+                Object value = array[i];
+                int comparison = comparator.compare(value, pivotValue);
+                if (comparison < 0) {
+                    array[i++] = array[lessEnd];
+                    array[lessEnd++] = value;
+                } else if (comparison > 0) {
+                    array[i] = array[--greaterStart];
+                    array[greaterStart] = value;
+                } else {
+                    i++;
+                }
+            }
+            return packBounds(lessEnd, greaterStart);
+        }
+
+        @Override
+        void insertionSort(int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                Object value = array[i];
+                int j = i - 1;
+                while (j >= left && comparator.compare(value, array[j]) < 0) {
+                    array[j + 1] = array[j];
+                    j--;
+                }
+                array[j + 1] = value;
+            }
+        }
+
+        @Override
+        void heapSort(int left, int right) {
+            int size = right - left;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(left, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                Object value = array[left];
+                array[left] = array[left + end];
+                array[left + end] = value;
+                siftDown(left, 0, end);
+            }
+        }
+
+        /** Moves the element of the heap stored from the offset down until its children are not greater. */
+        private void siftDown(int offset, int index, int size) {
+            Object value = array[offset + index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if (child + 1 < size && comparator.compare(array[offset + child], array[offset + child + 1]) < 0) {
+                    child++;
+                }
+                if (comparator.compare(value, array[offset + child]) >= 0) {
+                    break;
+                }
+                array[offset + index] = array[offset + child];
+                index = child;
+            }
+            array[offset + index] = value;
+        }
+    }
+
+    /** Sorter of an array of ints. */
+    private static class IntArraySorter extends RangeSorter {
+        private final @NotNull int[] array;
+
+        private IntArraySorter(@NotNull int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        long partition(int left, int right) {
+            int pivotValue = array[ThreadLocalRandom.current().nextInt(left, right)];
+            int lessEnd = left;
+            int greaterStart = right;
+            int i = left;
+            while (i < greaterStart) {
+                int value = array[i];
+                if (value < pivotValue) {
+                    array[i++] = array[lessEnd];
+                    array[lessEnd++] = value;
+                } else if (value > pivotValue) {
+                    array[i] = array[--greaterStart];
+                    array[greaterStart] = value;
+                } else {
+                    i++;
+                }
             }
+            return packBounds(lessEnd, greaterStart);
+        }
+
+        @Override
+        void insertionSort(int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                int value = array[i];
+                int j = i - 1;
+                while (j >= left && value < array[j]) {
+                    array[j + 1] = array[j];
+                    j--;
+                }
+                array[j + 1] = value;
+            }
+        }
+
+        @Override
+        void heapSort(int left, int right) {
+            int size = right - left;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(left, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                int value = array[left];
+                array[left] = array[left + end];
+                array[left + end] = value;
+                siftDown(left, 0, end);
+            }
+        }
+
+        /** Moves the element of the heap stored from the offset down until its children are not greater. */
+        private void siftDown(int offset, int index, int size) {
+            int value = array[offset + index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if (child + 1 < size && array[offset + child] < array[offset + child + 1]) {
+                    child++;
+                }
+                if (value >= array[offset + child]) {
+                    break;
+                }
+                array[offset + index] = array[offset + child];
+                index = child;
+            }
+            array[offset + index] = value;
         }
-        Collections.swap(list, right - 1, middle);
-        return middle;
     }
 
-    private static class QsortTask<T extends Comparable<? super T>> implements Runnable {
+    /** Sorter of an array of longs. */
+    private static class LongArraySorter extends RangeSorter {
+        private final @NotNull long[] array;
+
+        private LongArraySorter(@NotNull long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        long partition(int left, int right) {
+            long pivotValue = array[ThreadLocalRandom.current().nextInt(left, right)];
+            int lessEnd = left;
+            int greaterStart = right;
+            int i = left;
+            while (i < greaterStart) {
+                long value = array[i];
+                if (value < pivotValue) {
+                    array[i++] = array[lessEnd];
+                    array[lessEnd++] = value;
+                } else if (value > pivotValue) {
+                    array[i] = array[--greaterStart];
+                    array[greaterStart] = value;
+                } else {
+                    i++;
+                }
+            }
+            return packBounds(lessEnd, greaterStart);
+        }
+
+        @Override
+        void insertionSort(int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                long value = array[i];
+                int j = i - 1;
+                while (j >= left && value < array[j]) {
+                    array[j + 1] = array[j];
+                    j--;
+                }
+                array[j + 1] = value;
+            }
+        }
+
+        @Override
+        void heapSort(int left, int right) {
+            int size = right - left;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(left, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                long value = array[left];
+                array[left] = array[left + end];
+                array[left + end] = value;
+                siftDown(left, 0, end);
+            }
+        }
+
+        /** Moves the element of the heap stored from the offset down until its children are not greater. */
+        private void siftDown(int offset, int index, int size) {
+            long value = array[offset + index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if (child + 1 < size && array[offset + child] < array[offset + child + 1]) {
+                    child++;
+                }
+                if (value >= array[offset + child]) {
+                    break;
+                }
+                array[offset + index] = array[offset + child];
+                index = child;
+            }
+            array[offset + index] = value;
+        }
+    }
+
+    /** Sorter of an array of doubles, compared as by Double.compare. */
+    private static class DoubleArraySorter extends RangeSorter {
+        private final @NotNull double[] array;
+
+        private DoubleArraySorter(@NotNull double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        long partition(int left, int right) {
+            double pivotValue = array[ThreadLocalRandom.current().nextInt(left, right)];
+            int lessEnd = left;
+            int greaterStart = right;
+            int i = left;
+            while (i < greaterStart) {
+                double value = array[i];
+                int comparison = Double.compare(value, pivotValue);
+                if (comparison < 0) {
+                    array[i++] = array[lessEnd];
+                    array[lessEnd++] = value;
+                } else if (comparison > 0) {
+                    array[i] = array[--greaterStart];
+                    array[greaterStart] = value;
+                } else {
+                    i++;
+                }
+            }
+            return packBounds(lessEnd, greaterStart);
+        }
+
+        @Override
+        void insertionSort(int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                double value = array[i];
+                int j = i - 1;
+                while (j >= left && Double.compare(value, array[j]) < 0) {
+                    array[j + 1] = array[j];
+                    j--;
+                }
+                array[j + 1] = value;
+            }
+        }
+
+        @Override
+        void heapSort(int left, int right) {
+            int size = right - left;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(left, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                double value = array[left];
+                array[left] = array[left + end];
+                array[left + end] = value;
+                siftDown(left, 0, end);
+            }
+        }
+
+        /** Moves the element of the heap stored from the offset down until its children are not greater. */
+        private void siftDown(int offset, int index, int size) {
+            double value = array[offset + index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if (child + 1 < size && Double.compare(array[offset + child], array[offset + child + 1]) < 0) {
+                    child++;
+                }
+                if (Double.compare(value, array[offset + child]) >= 0) {
+                    break;
+                }
+                array[offset + index] = array[offset + child];
+                index = child;
+            }
+            array[offset + index] = value;
+        }
+    }
+
+    /** Sorter of long keys together with indices of their elements, ordered by keys and then by indices. */
+    private static class LongKeySorter extends RangeSorter {
+        private final @NotNull long[] keys;
+        private final @NotNull int[] indices;
+
+        private LongKeySorter(@NotNull long[] keys, @NotNull int[] indices) {
+            this.keys = keys;
+            this.indices = indices;
+        }
+
+        @Override
+        long partition(int left, int right) {
+            int pivotPosition = ThreadLocalRandom.current().nextInt(left, right);
+            long pivotKey = keys[pivotPosition];
+            int pivotIndex = indices[pivotPosition];
+            int lessEnd = left;
+            int greaterStart = right;
+            int i = left;
+            while (i < greaterStart) {
+                long key = keys[i];
+                int index = indices[i];
+                if (isLess(key, index, pivotKey, pivotIndex)) {
+                    swap(i++, lessEnd++);
+                } else if (isLess(pivotKey, pivotIndex, key, index)) {
+                    swap(i, --greaterStart);
+                } else {
+                    i++;
+                }
+            }
+            return packBounds(lessEnd, greaterStart);
+        }
+
+        @Override
+        void insertionSort(int left, int right) {
+            for (int i = left + 1; i < right; i++) {
+                long key = keys[i];
+                int index = indices[i];
+                int j = i - 1;
+                while (j >= left && isLess(key, index, keys[j], indices[j])) {
+                    keys[j + 1] = keys[j];
+                    indices[j + 1] = indices[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                indices[j + 1] = index;
+            }
+        }
+
+        @Override
+        void heapSort(int left, int right) {
+            int size = right - left;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(left, i, size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                swap(left, left + end);
+                siftDown(left, 0, end);
+            }
+        }
+
+        /** Moves the pair of the heap stored from the offset down until its children are not greater. */
+        private void siftDown(int offset, int position, int size) {
+            long key = keys[offset + position];
+            int index = indices[offset + position];
+            int child;
+            while ((child = 2 * position + 1) < size) {
+                int first = offset + child;
+                if (child + 1 < size && isLess(keys[first], indices[first], keys[first + 1], indices[first + 1])) {
+                    child++;
+                }
+                if (!isLess(key, index, keys[offset + child], indices[offset + child])) {
+                    break;
+                }
+                keys[offset + position] = keys[offset + child];
+                indices[offset + position] = indices[offset + child];
+                position = child;
+            }
+            keys[offset + position] = key;
+            indices[offset + position] = index;
+        }
+
+        /** Returns true if the first pair of a key and an index goes before the second one. */
+        private static boolean isLess(long key, int index, long otherKey, int otherIndex) {
+            return key < otherKey || key == otherKey && index < otherIndex;
+        }
+
+        /** Swaps the pairs at the given positions. */
+        private void swap(int position, int otherPosition) {
+            long key = keys[position];
+            keys[position] = keys[otherPosition];
+            keys[otherPosition] = key;
+            int index = indices[position];
+            indices[position] = indices[otherPosition];
+            indices[otherPosition] = index;
+        }
+    }
+
+    /** Task sorting a range of a sequence, it splits the range and sorts the parts in parallel. */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static class QsortTask extends RecursiveAction {
         private final int left;
         private final int right;
-        private final @NotNull List<T> list;
-        private final @NotNull CountDownLatch latch;
-        private final @NotNull ExecutorService threadPool;
+        private final int depthLimit;
+        private final @NotNull RangeSorter sorter;
 
-        public QsortTask(int left, int right, @NotNull List<T> list,
-                         @NotNull CountDownLatch latch, @NotNull ExecutorService threadPool) {
+        public QsortTask(int left, int right, int depthLimit, @NotNull RangeSorter sorter) {
             this.left = left;
             this.right = right;
-            this.list = list;
-            this.latch = latch;
-            this.threadPool = threadPool;
+            this.depthLimit = depthLimit;
+            this.sorter = sorter;
         }
 
-        /** Divides task (range to sort) into two smaller ones, submits them into the thread pool. */
+        /** Divides task (range to sort) into two smaller ones and executes them in parallel. */
         @Override
-        public void run() {
-            if (right - left <= AMOUNT_FOR_SIMPLE_SORT) {
-                simpleSort(list, left, right);
-                for (int i = left; i < right; i++) {
-                    latch.countDown();
-                }
+        protected void compute() {
+            if (right - left <= AMOUNT_FOR_SIMPLE_SORT || depthLimit == 0) {
+                sorter.sort(left, right, depthLimit);
                 return;
             }
 
-            int middle = partition(list, left, right);
-            threadPool.submit(new QsortTask<>(left, middle, list, latch, threadPool));
-            threadPool.submit(new QsortTask<>(middle + 1, right, list, latch, threadPool));
-            latch.countDown();
+            long bounds = sorter.partition(left, right);
+            invokeAll(new QsortTask(left, getLessEnd(bounds), depthLimit - 1, sorter),
+                    new QsortTask(getGreaterStart(bounds), right, depthLimit - 1, sorter));
         }
     }
 }
@@ -0,0 +1,101 @@
+package ru.hse.crossopt.qsort;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalSortTest {
+    private final Random random = new Random(179);
+    private Path directory;
+    private Path runDirectory;
+    private Path input;
+    private Path output;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("external-sort-test");
+        runDirectory = Files.createDirectory(directory.resolve("runs"));
+        input = directory.resolve("input.txt");
+        output = directory.resolve("output.txt");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private List<String> generateInput(int length) throws IOException {
+        var lines = new ArrayList<String>(length);
+        for (int i = 0; i < length; i++) {
+            lines.add(Integer.toString(random.nextInt(length), 36) + " record " + i);
+        }
+        Files.write(input, lines, StandardCharsets.UTF_8);
+        return lines;
+    }
+
+    private void assertRunsDeleted() throws IOException {
+        try (Stream<Path> files = Files.list(runDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void sort_fitsInMemory() throws IOException {
+        List<String> lines = generateInput(1000);
+        new ExternalSort(1 << 24, 2, runDirectory).sort(input, output);
+        Collections.sort(lines);
+        assertEquals(lines, Files.readAllLines(output, StandardCharsets.UTF_8));
+        assertRunsDeleted();
+    }
+
+    @Test
+    void sort_manyRuns() throws IOException {
+        List<String> lines = generateInput(50000);
+        new ExternalSort(1 << 18, 4, runDirectory).sort(input, output);
+        Collections.sort(lines);
+        assertEquals(lines, Files.readAllLines(output, StandardCharsets.UTF_8));
+        assertRunsDeleted();
+    }
+
+    @Test
+    void sort_severalMergePasses() throws IOException {
+        List<String> lines = generateInput(20000);
+        new ExternalSort(10000, 2, runDirectory).sort(input, output, Comparator.reverseOrder());
+        lines.sort(Comparator.reverseOrder());
+        assertEquals(lines, Files.readAllLines(output, StandardCharsets.UTF_8));
+        assertRunsDeleted();
+    }
+
+    @Test
+    void sort_empty() throws IOException {
+        Files.write(input, new byte[0]);
+        new ExternalSort(1000, 1, runDirectory).sort(input, output);
+        assertEquals(List.of(), Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void sort_missingInput() {
+        assertThrows(IOException.class, () -> new ExternalSort(1000, 1, runDirectory).sort(input, output));
+    }
+
+    @Test
+    void sort_invalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new ExternalSort(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ExternalSort(1000, -1));
+    }
+}
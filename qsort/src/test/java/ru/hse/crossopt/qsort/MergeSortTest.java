@@ -0,0 +1,116 @@
+package ru.hse.crossopt.qsort;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeSortTest {
+    private final Random random = new Random(179);
+
+    private List<int[]> generatePairs(int length, int keyAmount) {
+        var pairs = new ArrayList<int[]>(length);
+        for (int i = 0; i < length; i++) {
+            pairs.add(new int[] {random.nextInt(keyAmount), i});
+        }
+        return pairs;
+    }
+
+    @Test
+    void parallelSort_empty() {
+        var list = new ArrayList<Integer>();
+        MergeSort.parallelSort(list);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void parallelSort_manyElements() {
+        var list = new ArrayList<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            list.add(random.nextInt());
+        }
+        var listCopy = new ArrayList<>(list);
+        MergeSort.parallelSort(list);
+        Collections.sort(listCopy);
+        assertEquals(listCopy, list);
+    }
+
+    @Test
+    void simpleSort_fewElements() {
+        var list = new LinkedList<>(List.of(5, 3, 9, 1, 3, 7));
+        MergeSort.simpleSort(list);
+        assertEquals(List.of(1, 3, 3, 5, 7, 9), list);
+    }
+
+    @Test
+    void parallelSort_isStable() {
+        for (int length : new int[] {10, 1000, 200000}) {
+            List<int[]> pairs = generatePairs(length, 50);
+            var pairsCopy = new ArrayList<>(pairs);
+            MergeSort.parallelSort(pairs, Comparator.comparingInt(pair -> pair[0]), 4, null);
+            pairsCopy.sort(Comparator.comparingInt(pair -> pair[0]));
+            assertArrayEquals(pairsCopy.toArray(), pairs.toArray());
+        }
+    }
+
+    @Test
+    void simpleSort_isStable() {
+        List<int[]> pairs = generatePairs(100000, 3);
+        var pairsCopy = new ArrayList<>(pairs);
+        MergeSort.simpleSort(pairs, Comparator.comparingInt(pair -> pair[0]));
+        pairsCopy.sort(Comparator.comparingInt(pair -> pair[0]));
+        assertArrayEquals(pairsCopy.toArray(), pairs.toArray());
+    }
+
+    @Test
+    void parallelSort_sortedAndReversed() {
+        var list = new ArrayList<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            list.add(i);
+        }
+        var listCopy = new ArrayList<>(list);
+        MergeSort.parallelSort(list, Comparator.reverseOrder());
+        Collections.reverse(listCopy);
+        assertEquals(listCopy, list);
+        MergeSort.parallelSort(list);
+        Collections.reverse(listCopy);
+        assertEquals(listCopy, list);
+    }
+
+    @Test
+    void parallelSort_reusesBuffer() {
+        var buffer = new MergeSort.Buffer();
+        for (int length : new int[] {100000, 50, 30000}) {
+            List<int[]> pairs = generatePairs(length, 1000);
+            var pairsCopy = new ArrayList<>(pairs);
+            MergeSort.parallelSort(pairs, Comparator.comparingInt(pair -> pair[0]), 2, buffer);
+            pairsCopy.sort(Comparator.comparingInt(pair -> pair[0]));
+            assertArrayEquals(pairsCopy.toArray(), pairs.toArray());
+        }
+    }
+
+    @Test
+    void parallelSort_bufferUsedByAnotherSort() {
+        var buffer = new MergeSort.Buffer();
+        var list = new ArrayList<>(List.of(3, 2, 1));
+        Comparator<Integer> comparator = (first, second) -> {
+            assertThrows(IllegalStateException.class,
+                    () -> MergeSort.parallelSort(new ArrayList<>(List.of(2, 1)), Integer::compare, 1, buffer));
+            return Integer.compare(first, second);
+        };
+        MergeSort.parallelSort(list, comparator, 1, buffer);
+        assertEquals(List.of(1, 2, 3), list);
+    }
+
+    @Test
+    void parallelSort_negativeThreads() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MergeSort.parallelSort(new ArrayList<Integer>(), Integer::compare, 0, null));
+    }
+}
@@ -5,8 +5,13 @@ import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -110,12 +115,147 @@ class QsortTest {
         assertArrayEquals(testIntegerCopy.toArray(), testInteger.toArray());
     }
 
+    @Test
+    void parallelSort_manyElementsCommonPool() {
+        generateList(50000);
+        Qsort.parallelSort(testInteger);
+        Collections.sort(testIntegerCopy);
+        assertArrayEquals(testIntegerCopy.toArray(), testInteger.toArray());
+    }
+
+    @Test
+    void parallelSort_linkedList() {
+        generateList(50000);
+        var linkedList = new LinkedList<>(testInteger);
+        Qsort.parallelSort(linkedList, 4);
+        Collections.sort(testIntegerCopy);
+        assertArrayEquals(testIntegerCopy.toArray(), linkedList.toArray());
+    }
+
+    @Test
+    void simpleSort_linkedList() {
+        generateList(50000);
+        var linkedList = new LinkedList<>(testInteger);
+        Qsort.simpleSort(linkedList);
+        Collections.sort(testIntegerCopy);
+        assertArrayEquals(testIntegerCopy.toArray(), linkedList.toArray());
+    }
+
     @Test
     void parallelSort_negativeThreads() {
         generateList(20);
         assertThrows(IllegalArgumentException.class, () -> Qsort.parallelSort(testInteger, -1));
     }
 
+    @Test
+    void parallelSort_intArray() {
+        for (int length : new int[] {0, 1, 50, 50000}) {
+            int[] array = random.ints(length).toArray();
+            int[] arrayCopy = array.clone();
+            Qsort.parallelSort(array, 4);
+            Arrays.sort(arrayCopy);
+            assertArrayEquals(arrayCopy, array);
+        }
+    }
+
+    @Test
+    void parallelSort_longArray() {
+        long[] array = random.longs(50000).toArray();
+        long[] arrayCopy = array.clone();
+        Qsort.parallelSort(array);
+        Arrays.sort(arrayCopy);
+        assertArrayEquals(arrayCopy, array);
+    }
+
+    @Test
+    void parallelSort_doubleArray() {
+        double[] array = random.doubles(50000).toArray();
+        for (int i = 0; i < 100; i++) {
+            array[random.nextInt(array.length)] = Double.NaN;
+            array[random.nextInt(array.length)] = -0.0;
+            array[random.nextInt(array.length)] = 0.0;
+        }
+        double[] arrayCopy = array.clone();
+        Qsort.parallelSort(array, 3);
+        Arrays.sort(arrayCopy);
+        assertArrayEquals(arrayCopy, array);
+    }
+
+    @Test
+    void parallelSort_worstCaseInputs() {
+        int length = 200000;
+        var inputs = new ArrayList<int[]>();
+        inputs.add(new int[length]);
+        inputs.add(IntStream.range(0, length).toArray());
+        inputs.add(IntStream.range(0, length).map(i -> length - i).toArray());
+        inputs.add(IntStream.range(0, length).map(i -> Math.min(i, length - i)).toArray());
+        inputs.add(random.ints(length, 0, 3).toArray());
+        for (int[] array : inputs) {
+            int[] arrayCopy = array.clone();
+            Qsort.parallelSort(array, 4);
+            Arrays.sort(arrayCopy);
+            assertArrayEquals(arrayCopy, array);
+        }
+    }
+
+    @Test
+    void simpleSort_duplicates() {
+        testInteger = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            testInteger.add(random.nextInt(10));
+        }
+        testIntegerCopy = new ArrayList<>(testInteger);
+        Qsort.simpleSort(testInteger);
+        Collections.sort(testIntegerCopy);
+        assertArrayEquals(testIntegerCopy.toArray(), testInteger.toArray());
+    }
+
+    @Test
+    void parallelSort_comparator() {
+        generateList(50000);
+        Qsort.parallelSort(testInteger, Comparator.reverseOrder(), 4);
+        testIntegerCopy.sort(Comparator.reverseOrder());
+        assertArrayEquals(testIntegerCopy.toArray(), testInteger.toArray());
+    }
+
+    @Test
+    void simpleSort_comparator() {
+        var strings = new ArrayList<>(List.of("ccc", "a", "bb", "", "dddd"));
+        Qsort.simpleSort(strings, Comparator.comparingInt(String::length));
+        assertEquals(List.of("", "a", "bb", "ccc", "dddd"), strings);
+    }
+
+    @Test
+    void parallelSort_byIntKeyIsStable() {
+        var pairs = new ArrayList<int[]>();
+        for (int i = 0; i < 50000; i++) {
+            pairs.add(new int[] {random.nextInt(100) - 50, i});
+        }
+        var pairsCopy = new ArrayList<>(pairs);
+        Qsort.parallelSortByIntKey(pairs, pair -> pair[0], 4);
+        pairsCopy.sort(Comparator.comparingInt(pair -> pair[0]));
+        assertArrayEquals(pairsCopy.toArray(), pairs.toArray());
+    }
+
+    @Test
+    void parallelSort_byLongKeyIsStable() {
+        var pairs = new LinkedList<long[]>();
+        for (int i = 0; i < 50000; i++) {
+            pairs.add(new long[] {random.nextInt(100) * (long) Integer.MAX_VALUE, i});
+        }
+        var pairsCopy = new ArrayList<>(pairs);
+        Qsort.parallelSortByLongKey(pairs, pair -> pair[0]);
+        pairsCopy.sort(Comparator.comparingLong(pair -> pair[0]));
+        assertArrayEquals(pairsCopy.toArray(), pairs.toArray());
+    }
+
+    @Test
+    void parallelSort_arrayNegativeThreads() {
+        assertThrows(IllegalArgumentException.class, () -> Qsort.parallelSort(new int[10], 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> Qsort.parallelSortByIntKey(new ArrayList<String>(), String::length, 0));
+    }
+
     @Test
     void parallelSort_sortStrings() {
         ArrayList<String> stringTest = new ArrayList<>();